@@ -0,0 +1,16 @@
+package com.example.ChatApp.Auth;
+
+import java.security.Principal;
+import java.time.Instant;
+
+/**
+ * Identity taken from a verified JWT. The principal name is the user id,
+ * as for STOMP sessions.
+ */
+public record AuthenticatedUser(String userId, String email, Instant expiresAt) implements Principal {
+
+    @Override
+    public String getName() {
+        return userId;
+    }
+}
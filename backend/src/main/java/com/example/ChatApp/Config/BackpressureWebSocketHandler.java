@@ -0,0 +1,76 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.DTOs.BackpressureStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * STOMP session handler whose sessions shed droppable frames when their outbound queue backs
+ * up, instead of Spring's default of closing them. Keeps the slow-consumer counters shown on
+ * /api/health/websocket. The send time and buffer size limits come from the transport
+ * registration in {@link WebSocketConfig}.
+ */
+@Slf4j
+public class BackpressureWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    public enum OverflowPolicy {
+        DROP_DROPPABLE,
+        DISCONNECT
+    }
+
+    private final OverflowPolicy overflowPolicy;
+    private final List<String> droppableDestinations;
+
+    private final Map<String, DroppingSessionDecorator> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnectedSessions = new AtomicLong();
+
+    public BackpressureWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                        OverflowPolicy overflowPolicy, List<String> droppableDestinations) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.overflowPolicy = overflowPolicy;
+        this.droppableDestinations = List.copyOf(droppableDestinations);
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        boolean drop = overflowPolicy == OverflowPolicy.DROP_DROPPABLE;
+        DroppingSessionDecorator decorated = new DroppingSessionDecorator(session, getSendTimeLimit(),
+                getSendBufferSizeLimit(), drop ? droppableDestinations : List.of(), this);
+        sessions.put(session.getId(), decorated);
+        return decorated;
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        sessions.remove(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    public BackpressureStatsDTO stats() {
+        return BackpressureStatsDTO.builder()
+                .overflowPolicy(overflowPolicy.name())
+                .throttledSessions((int) sessions.values().stream().filter(session -> session.getBufferSize() > 0).count())
+                .droppedMessages(droppedMessages.get())
+                .disconnectedSessions(disconnectedSessions.get())
+                .build();
+    }
+
+    void recordDropped() {
+        droppedMessages.incrementAndGet();
+    }
+
+    void recordDisconnected(String sessionId, String reason) {
+        disconnectedSessions.incrementAndGet();
+        log.warn("Closing slow WebSocket session {}: {}", sessionId, reason);
+    }
+}
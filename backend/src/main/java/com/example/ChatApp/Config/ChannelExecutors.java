@@ -0,0 +1,217 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.DTOs.ExecutorStatsDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executors of the STOMP inbound, outbound and broker channels.
+ * In "platform" mode each channel gets a fixed pool with a bounded queue. An inbound message
+ * that finds the queue full is rejected rather than run on the transport thread, which is
+ * shared by other sessions; the per-session rate limits keep clients that behave far from
+ * that point. On the outbound and broker channels, droppable messages (see
+ * {@code chat.websocket.droppable-destinations}) are discarded when the queue is full, and any
+ * other message waits for room, so a chat message is never lost to a full queue.
+ * In "virtual" mode (Java 21+) every message runs on its own virtual thread, so handlers
+ * blocked on Mongo do not hold a pool thread other sessions are waiting for.
+ * Per-session ordering is kept by the channels (preserve receive/publish order), not here.
+ */
+@Component
+@Slf4j
+public class ChannelExecutors {
+
+    @Value("${chat.websocket.executor.mode:platform}")
+    private String mode;
+
+    @Value("${chat.websocket.inbound.threads:32}")
+    private int inboundThreads;
+
+    @Value("${chat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${chat.websocket.outbound.threads:16}")
+    private int outboundThreads;
+
+    @Value("${chat.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    // 0 delivers broker messages on the thread that sent them, as by default
+    @Value("${chat.websocket.broker.threads:0}")
+    private int brokerThreads;
+
+    @Value("${chat.websocket.broker.queue-capacity:10000}")
+    private int brokerQueueCapacity;
+
+    @Value("${chat.websocket.droppable-destinations:/topic/online,/topic/status,/user/queue/read,/user/queue/typing}")
+    private List<String> droppableDestinations;
+
+    private boolean virtual;
+    private final Map<String, Executor> executors = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        virtual = switch (mode) {
+            case "platform" -> false;
+            case "virtual" -> true;
+            default -> throw new IllegalStateException("chat.websocket.executor.mode must be platform or virtual, not " + mode);
+        };
+        if (virtual && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("chat.websocket.executor.mode=virtual needs Java 21 or later, running "
+                    + Runtime.version());
+        }
+
+        executors.put("inbound", create("inbound", inboundThreads, inboundQueueCapacity,
+                new ThreadPoolExecutor.AbortPolicy()));
+        executors.put("outbound", create("outbound", outboundThreads, outboundQueueCapacity,
+                new SheddingPolicy()));
+        if (virtual || brokerThreads > 0) {
+            executors.put("broker", create("broker", brokerThreads, brokerQueueCapacity, new SheddingPolicy()));
+        }
+        log.info("WebSocket channel executors: {} mode, {}", mode, executors.keySet());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Virtual threads are not pooled, there is nothing to stop
+        executors.values().forEach(executor -> {
+            if (executor instanceof ThreadPoolTaskExecutor pool) {
+                pool.shutdown();
+            }
+        });
+    }
+
+    public Executor inbound() {
+        return executors.get("inbound");
+    }
+
+    public Executor outbound() {
+        return executors.get("outbound");
+    }
+
+    /**
+     * Null when broker messages are delivered on the sending thread
+     */
+    public Executor broker() {
+        return executors.get("broker");
+    }
+
+    public Map<String, ExecutorStatsDTO> stats() {
+        Map<String, ExecutorStatsDTO> stats = new LinkedHashMap<>();
+        executors.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolTaskExecutor pool) {
+                ThreadPoolExecutor threadPool = pool.getThreadPoolExecutor();
+                stats.put(name, ExecutorStatsDTO.builder()
+                        .mode(mode)
+                        .poolSize(threadPool.getPoolSize())
+                        .activeThreads(threadPool.getActiveCount())
+                        .queueSize(threadPool.getQueue().size())
+                        .queueCapacity(threadPool.getQueue().size() + threadPool.getQueue().remainingCapacity())
+                        .completedTasks(threadPool.getCompletedTaskCount())
+                        .droppedTasks(threadPool.getRejectedExecutionHandler() instanceof SheddingPolicy policy
+                                ? policy.dropped.get() : 0)
+                        .build());
+            } else if (executor instanceof VirtualThreadExecutor virtualExecutor) {
+                stats.put(name, ExecutorStatsDTO.builder()
+                        .mode(mode)
+                        .activeThreads(virtualExecutor.active.get())
+                        .completedTasks(virtualExecutor.completed.get())
+                        .build());
+            }
+        });
+        return stats;
+    }
+
+    private Executor create(String name, int threads, int queueCapacity, RejectedExecutionHandler overflow) {
+        if (virtual) {
+            return new VirtualThreadExecutor(new VirtualThreadTaskExecutor("ws-" + name + "-"));
+        }
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setThreadNamePrefix("ws-" + name + "-");
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(queueCapacity);
+        pool.setAllowCoreThreadTimeOut(true);
+        pool.setKeepAliveSeconds(60);
+        pool.setRejectedExecutionHandler(overflow);
+        pool.initialize();
+        return pool;
+    }
+
+    /**
+     * Discards droppable messages that find the queue full and makes the sender wait for room
+     * for any other message
+     */
+    private final class SheddingPolicy implements RejectedExecutionHandler {
+        private final AtomicLong dropped = new AtomicLong();
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Channel executor is shut down");
+            }
+            if (task instanceof MessageHandlingRunnable handling && isDroppable(handling.getMessage())) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the channel queue", e);
+            }
+        }
+
+        private boolean isDroppable(Message<?> message) {
+            // User destinations are resolved per session by now, the original is kept in a header
+            Object original = message.getHeaders().get(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+            String destination = original instanceof String value
+                    ? value
+                    : SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            return destination != null && droppableDestinations.stream().anyMatch(destination::startsWith);
+        }
+    }
+
+    /**
+     * Counts running and finished tasks, a thread-per-task executor has no pool or queue to report
+     */
+    private static final class VirtualThreadExecutor implements Executor {
+        private final VirtualThreadTaskExecutor delegate;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+
+        VirtualThreadExecutor(VirtualThreadTaskExecutor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            delegate.execute(() -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            });
+        }
+    }
+}
@@ -6,6 +6,8 @@ import com.example.ChatApp.Models.User;
 import com.example.ChatApp.Repositories.ChatMessageRepository;
 import com.example.ChatApp.Repositories.ChatRoomRepository;
 import com.example.ChatApp.Repositories.UserRepository;
+import com.example.ChatApp.Services.ChatRoomService;
+import com.example.ChatApp.Services.ConversationSummaryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -26,6 +28,7 @@ public class DataInitializer implements CommandLineRunner {
     private final UserRepository userRepository;
     private final ChatRoomRepository chatRoomRepository;
     private final ChatMessageRepository chatMessageRepository;
+    private final ConversationSummaryService conversationSummaryService;
     private final PasswordEncoder passwordEncoder;
 
     // Demo user data
@@ -134,7 +137,7 @@ public class DataInitializer implements CommandLineRunner {
                     User user2 = users.get(j);
 
                     // Create chat room
-                    String chatId = generateChatId(user1.getId(), user2.getId());
+                    String chatId = ChatRoomService.chatRoomIdFor(user1.getId(), user2.getId());
                     ChatRoom chatRoom = ChatRoom.builder()
                             .id(chatId)
                             .firstUserId(user1.getId())
@@ -149,6 +152,7 @@ public class DataInitializer implements CommandLineRunner {
                     // Create messages with timestamps going back in time
                     Instant baseTime = Instant.now().minus(random.nextInt(7), ChronoUnit.DAYS);
 
+                    List<ChatMessage> saved = new ArrayList<>(messages.length);
                     for (int k = 0; k < messages.length; k++) {
                         ChatMessage message = ChatMessage.builder()
                                 .chatId(chatId)
@@ -157,17 +161,15 @@ public class DataInitializer implements CommandLineRunner {
                                 .content(messages[k])
                                 .timestamp(baseTime.plus(k * 5, ChronoUnit.MINUTES))
                                 .build();
-                        chatMessageRepository.save(message);
+                        saved.add(chatMessageRepository.save(message));
                     }
+                    // Seeded past the write-behind writer, so summaries are not updated by it
+                    conversationSummaryService.recordMessages(saved);
                 }
             }
         }
     }
 
-    private String generateChatId(String id1, String id2) {
-        return id1.compareTo(id2) < 0 ? id1 + "_" + id2 : id2 + "_" + id1;
-    }
-
     private void printCredentials() {
         log.info("\n" + "=".repeat(60));
         log.info("DEMO USER CREDENTIALS");
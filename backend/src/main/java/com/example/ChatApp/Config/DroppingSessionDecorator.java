@@ -0,0 +1,110 @@
+package com.example.ChatApp.Config;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Spring's per-session send buffer, choosing what gets into it while the client is behind.
+ * Droppable frames (presence, read receipts, typing, heartbeats) are superseded by the next
+ * one and are dropped once the buffer is half full, which keeps the other half for chat
+ * frames. Chat frames are never dropped: one that does not fit closes the session, and the
+ * client resyncs after reconnecting. The buffer itself never evicts anything; if concurrent
+ * senders overshoot the limit anyway it closes the session too.
+ */
+public class DroppingSessionDecorator extends ConcurrentWebSocketSessionDecorator {
+
+    private final List<String> droppableDestinations;
+    private final BackpressureWebSocketHandler handler;
+    private volatile boolean closing;
+
+    DroppingSessionDecorator(WebSocketSession session, int sendTimeLimit, int bufferSizeLimit,
+                             List<String> droppableDestinations, BackpressureWebSocketHandler handler) {
+        // Spring's DROP strategy evicts the oldest frames of any kind, chat frames included
+        super(session, sendTimeLimit, bufferSizeLimit, OverflowStrategy.TERMINATE);
+        this.droppableDestinations = droppableDestinations;
+        this.handler = handler;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+        // Anything buffered means a write is in progress and this frame has to wait behind it
+        int buffered = getBufferSize();
+        if (buffered > 0) {
+            long size = buffered + (long) message.getPayloadLength();
+            if (isDroppable(message)) {
+                if (size > getBufferSizeLimit() / 2) {
+                    handler.recordDropped();
+                    return;
+                }
+            } else if (size > getBufferSizeLimit()) {
+                limitExceeded("Buffer size limit exceeded");
+            }
+        }
+
+        try {
+            super.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            // Send time limit, checked by the buffer while another thread is writing
+            closing = true;
+            handler.recordDisconnected(getId(), e.getMessage());
+            throw e;
+        }
+    }
+
+    private void limitExceeded(String reason) {
+        closing = true;
+        handler.recordDisconnected(getId(), reason);
+        // The sub-protocol handler closes the session and cleans up its subscriptions
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private boolean isDroppable(WebSocketMessage<?> message) {
+        if (droppableDestinations.isEmpty()) {
+            return false;
+        }
+        String head;
+        if (message instanceof TextMessage text) {
+            head = text.getPayload();
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(payload.remaining(), 512)];
+            payload.get(bytes);
+            head = new String(bytes, StandardCharsets.ISO_8859_1);
+        } else {
+            return false;
+        }
+
+        // Heartbeats are worthless behind a backlog
+        if (head.isBlank()) {
+            return true;
+        }
+        if (!head.startsWith("MESSAGE\n")) {
+            return false;
+        }
+        int headersEnd = head.indexOf("\n\n");
+        int destination = head.indexOf("\ndestination:");
+        if (destination < 0 || (headersEnd >= 0 && destination > headersEnd)) {
+            return false;
+        }
+        int valueStart = destination + "\ndestination:".length();
+        for (String prefix : droppableDestinations) {
+            if (head.startsWith(prefix, valueStart)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,9 +1,8 @@
 package com.example.ChatApp.Config;
 
-import com.example.ChatApp.Models.User;
-import com.example.ChatApp.Repositories.UserRepository;
+import com.example.ChatApp.Auth.AuthenticatedUser;
 import com.example.ChatApp.Services.JwtService;
-import com.example.ChatApp.Services.UserDetailsServiceImpl;
+import io.jsonwebtoken.JwtException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.Message;
@@ -14,7 +13,6 @@ import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
@@ -25,13 +23,9 @@ public class JwtAuthenticationInterceptor implements ChannelInterceptor {
     @Autowired
     private JwtService jwtTokenProvider;
 
-    @Autowired
-    private UserRepository userRepository;
-
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-        log.info("we are inside the jwt interceptor");
 
         if (StompCommand.CONNECT.equals(accessor.getCommand())) {
             String token = accessor.getFirstNativeHeader("Authorization");
@@ -39,17 +33,17 @@ public class JwtAuthenticationInterceptor implements ChannelInterceptor {
             if (token != null && token.startsWith("Bearer ")) {
                 token = token.substring(7);
 
-                if (jwtTokenProvider.isTokenValid(token)) {
-                    String email = jwtTokenProvider.extractEmail(token);
-                    User user = userRepository.findByEmail(email).get();
-
-                    UsernamePasswordAuthenticationToken auth =
-                            new UsernamePasswordAuthenticationToken(user.getId(), null, Collections.emptyList());
-                    SecurityContextHolder.getContext().setAuthentication(auth);
-                    accessor.setUser(auth);
-                } else {
+                AuthenticatedUser user;
+                try {
+                    user = jwtTokenProvider.authenticate(token);
+                } catch (JwtException e) {
                     throw new IllegalArgumentException("Invalid JWT token");
                 }
+
+                UsernamePasswordAuthenticationToken auth =
+                        new UsernamePasswordAuthenticationToken(user.userId(), null, Collections.emptyList());
+                SecurityContextHolder.getContext().setAuthentication(auth);
+                accessor.setUser(auth);
             } else {
                 throw new IllegalArgumentException("Missing or invalid Authorization header");
             }
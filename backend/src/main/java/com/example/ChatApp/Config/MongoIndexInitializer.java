@@ -0,0 +1,111 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.AttachmentUpload;
+import com.example.ChatApp.Models.AvatarBlob;
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.ConversationSummary;
+import com.example.ChatApp.Models.User;
+import com.example.ChatApp.Services.UserDirectoryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes the queries depend on. Index creation from the mapping annotations
+ * is not enabled, so the ones that must exist are created here; creating an index that
+ * already exists with the same keys and name is a no-op.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MongoIndexInitializer implements CommandLineRunner {
+    private final MongoTemplate mongoTemplate;
+
+    // Replaced by chat_timestamp_id_idx, which has the same prefix
+    private static final String LEGACY_CHAT_TIMESTAMP_INDEX = "chat_timestamp_idx";
+
+    @Override
+    public void run(String... args) {
+        IndexOperations chatMessages = mongoTemplate.indexOps(ChatMessage.class);
+        // Keyset pagination sorts by timestamp then _id, see ChatMessageService#getChatMessagePage
+        if (create(chatMessages, new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("timestamp", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("chat_timestamp_id_idx"))) {
+            dropLegacy(chatMessages, LEGACY_CHAT_TIMESTAMP_INDEX);
+        }
+        // Resync reads a chat after a seq, see ChatMessageService#resync
+        create(chatMessages, new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("seq", Sort.Direction.ASC)
+                .named("chat_seq_idx"));
+        // Last line of send deduplication, for retries that come after the window, see SendDeduplicator
+        create(chatMessages, new Index()
+                .on("senderId", Sort.Direction.ASC)
+                .on("clientMessageId", Sort.Direction.ASC)
+                .named("sender_client_message_idx")
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where("clientMessageId").exists(true))));
+
+        // The sidebar lists a user's conversations by last message, see UserService#getConversations
+        create(mongoTemplate.indexOps(ConversationSummary.class), new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("lastMessageTime", Sort.Direction.DESC)
+                .named("user_last_message_idx"));
+
+        // The upload sweep looks for uploads by status and age, see AttachmentService#sweepStaleUploads
+        create(mongoTemplate.indexOps(AttachmentUpload.class), new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("updatedAt", Sort.Direction.ASC)
+                .named("status_updated_idx"));
+
+        // The orphan sweep looks for unreferenced blobs by age, see FileStorageService#sweepOrphanAvatars
+        create(mongoTemplate.indexOps(AvatarBlob.class), new Index()
+                .on("refCount", Sort.Direction.ASC)
+                .on("updatedAt", Sort.Direction.ASC)
+                .named("ref_count_updated_idx"));
+
+        // Directory keyset pagination sorts by name or username then _id, see UserDirectoryService#getPage
+        IndexOperations users = mongoTemplate.indexOps(User.class);
+        for (String field : UserDirectoryService.SORT_FIELDS) {
+            create(users, new Index()
+                    .on(field, Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC)
+                    .named(field + "_id_idx"));
+        }
+    }
+
+    private boolean create(IndexOperations indexOps, IndexDefinition index) {
+        try {
+            indexOps.createIndex(index);
+            return true;
+        } catch (DataAccessException e) {
+            log.error("Could not create index {}", index.getIndexOptions().get("name"), e);
+            return false;
+        }
+    }
+
+    private void dropLegacy(IndexOperations indexOps, String name) {
+        try {
+            if (indexOps.getIndexInfo().stream().anyMatch(info -> name.equals(info.getName()))) {
+                indexOps.dropIndex(name);
+                log.info("Dropped index {}, superseded", name);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not drop index {}", name, e);
+        }
+    }
+}
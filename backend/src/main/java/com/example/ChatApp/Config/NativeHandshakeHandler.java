@@ -0,0 +1,36 @@
+package com.example.ChatApp.Config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Handshake handler of the native WebSocket endpoint. The container offers
+ * permessage-deflate to clients that ask for it; this removes it from the
+ * negotiated extensions when compression is turned off.
+ */
+class NativeHandshakeHandler extends DefaultHandshakeHandler {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean permessageDeflate;
+
+    NativeHandshakeHandler(boolean permessageDeflate) {
+        this.permessageDeflate = permessageDeflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> extensions = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        if (permessageDeflate) {
+            return extensions;
+        }
+        return extensions.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .toList();
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.Enums.PayloadEncoding;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.SmartMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session binary encoding of outgoing STOMP messages.
+ * A client asks for it with a {@code payload-encoding: cbor} (or {@code smile}) header on
+ * CONNECT; the preference list is tried in order. The JSON converter keeps the object it
+ * serialized in a header, and that object is serialized once per negotiated encoding with
+ * the CBOR/Smile mappers of the binary converters; the result is shared by every subscriber
+ * of that send.
+ * Encoded messages go out as binary frames with {@code content-type: application/octet-stream}
+ * and a {@code payload-encoding} header. SockJS sessions cannot carry binary frames and
+ * stay on JSON, as do clients that do not ask.
+ */
+@Component
+@Slf4j
+public class PayloadEncodingInterceptor implements ChannelInterceptor {
+
+    public static final String HEADER = "payload-encoding";
+
+    // WebSocket session attribute, true when the transport can carry binary frames
+    public static final String BINARY_FRAMES_ATTRIBUTE = "binaryFrames";
+
+    // In-memory message header, never written to the wire
+    static final String SOURCE_HEADER = PayloadEncodingInterceptor.class.getName() + ".source";
+
+    private final Map<String, PayloadEncoding> sessionEncodings = new ConcurrentHashMap<>();
+
+    // Filled while the message converters are configured, read-only afterwards
+    private final Map<PayloadEncoding, ObjectMapper> mappers = new EnumMap<>(PayloadEncoding.class);
+
+    // Keyed by payload identity: the broker hands the same byte[] to every subscriber
+    private final Cache<byte[], Map<PayloadEncoding, byte[]>> encodedPayloads = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10_000)
+            .build();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+        if (accessor.getMessageType() == SimpMessageType.CONNECT) {
+            negotiate(accessor);
+            return message;
+        }
+        if (accessor.getMessageType() == SimpMessageType.MESSAGE) {
+            return encode(message, accessor);
+        }
+        return message;
+    }
+
+    /**
+     * Mapper to serialize bodies with for sessions that negotiated {@code encoding}
+     */
+    void register(PayloadEncoding encoding, ObjectMapper mapper) {
+        mappers.put(encoding, mapper);
+    }
+
+    /**
+     * Wrap the JSON converter of outgoing messages so each converted message carries its source object
+     */
+    SmartMessageConverter retainingSource(SmartMessageConverter jsonConverter) {
+        return new SourceRetainingConverter(jsonConverter);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionEncodings.remove(event.getSessionId());
+    }
+
+    private void negotiate(SimpMessageHeaderAccessor accessor) {
+        String requested = accessor.getFirstNativeHeader(HEADER);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (requested == null || accessor.getSessionId() == null || attributes == null
+                || !Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE))) {
+            return;
+        }
+        for (String token : requested.split(",")) {
+            PayloadEncoding encoding = PayloadEncoding.fromToken(token).orElse(null);
+            if (encoding == PayloadEncoding.JSON) {
+                return;
+            }
+            if (encoding != null) {
+                sessionEncodings.put(accessor.getSessionId(), encoding);
+                return;
+            }
+        }
+    }
+
+    private Message<?> encode(Message<?> message, SimpMessageHeaderAccessor accessor) {
+        PayloadEncoding encoding = accessor.getSessionId() != null
+                ? sessionEncodings.get(accessor.getSessionId())
+                : null;
+        MimeType contentType = accessor.getContentType();
+        Object source = accessor.getHeader(SOURCE_HEADER);
+        ObjectMapper mapper = encoding != null ? mappers.get(encoding) : null;
+        // Without a source object (a raw payload) the message stays JSON
+        if (mapper == null || source == null || !(message.getPayload() instanceof byte[] json)
+                || contentType == null || !PayloadEncoding.JSON.getMimeType().isCompatibleWith(contentType)) {
+            return message;
+        }
+
+        byte[] payload;
+        try {
+            payload = encodedPayloads.get(json, key -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(encoding, target -> serialize(mapper, source));
+        } catch (UncheckedIOException e) {
+            log.warn("Could not encode message as {}, sending JSON", encoding.token(), e);
+            return message;
+        }
+
+        SimpMessageHeaderAccessor encoded = SimpMessageHeaderAccessor.wrap(message);
+        // Octet-stream is what makes the STOMP handler send a binary frame
+        encoded.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        encoded.setNativeHeader(HEADER, encoding.token());
+        return MessageBuilder.createMessage(payload, encoded.getMessageHeaders());
+    }
+
+    private static byte[] serialize(ObjectMapper mapper, Object source) {
+        try {
+            return mapper.writeValueAsBytes(source);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class SourceRetainingConverter implements SmartMessageConverter {
+        private final SmartMessageConverter delegate;
+
+        SourceRetainingConverter(SmartMessageConverter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object fromMessage(Message<?> message, Class<?> targetClass) {
+            return delegate.fromMessage(message, targetClass);
+        }
+
+        @Override
+        public Object fromMessage(Message<?> message, Class<?> targetClass, Object conversionHint) {
+            return delegate.fromMessage(message, targetClass, conversionHint);
+        }
+
+        @Override
+        public Message<?> toMessage(Object payload, MessageHeaders headers) {
+            return toMessage(payload, headers, null);
+        }
+
+        @Override
+        public Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+            Message<?> message = delegate.toMessage(payload, headers, conversionHint);
+            // Messaging templates pass mutable headers that become the message's own
+            MessageHeaderAccessor accessor = headers != null
+                    ? MessageHeaderAccessor.getAccessor(headers, MessageHeaderAccessor.class)
+                    : null;
+            if (message != null && accessor != null && accessor.isMutable()) {
+                accessor.setHeader(SOURCE_HEADER, payload);
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.ChatApp.Config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user limits on SEND frames, checked before a frame is queued for the inbound executor.
+ * Rules are {@code destination:perSecond:burst[:drop]}; a destination ending in {@code *}
+ * matches by prefix and {@code *} alone matches every SEND. A frame must pass every rule
+ * that matches it and only takes a token if it passes all of them. Buckets use the generic
+ * cell rate algorithm: one AtomicLong per user and rule holds the theoretical arrival time
+ * and is updated with a CAS, so checking a frame takes no lock and allocates nothing.
+ * Rejected frames get an ERROR frame, which ends the STOMP session, unless one of the rules
+ * matching the frame is marked {@code drop}; then it is discarded silently instead.
+ */
+@Component
+@Slf4j
+public class RateLimitInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    @Lazy
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Value("${chat.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.rate-limit.rules:*:30:60,/app/chat:5:20,/app/typing:5:10:drop}")
+    private List<String> ruleSpecs;
+
+    private Rule[] rules;
+
+    // Theoretical arrival time per rule, in nanoseconds since startNanos
+    private final ConcurrentHashMap<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final AtomicLong rejectedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    public RateLimitInterceptor() {
+        this(System::nanoTime);
+    }
+
+    RateLimitInterceptor(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    @PostConstruct
+    public void init() {
+        rules = ruleSpecs.stream().map(Rule::parse).toArray(Rule[]::new);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.SEND.equals(accessor.getCommand())) {
+            return message;
+        }
+        String destination = accessor.getDestination();
+        Principal user = accessor.getUser();
+        String key = user != null ? user.getName() : accessor.getSessionId();
+        if (destination == null || key == null) {
+            return message;
+        }
+
+        AtomicLongArray userBuckets = buckets.get(key);
+        if (userBuckets == null) {
+            userBuckets = buckets.computeIfAbsent(key, k -> new AtomicLongArray(rules.length));
+        }
+        long now = nanoClock.getAsLong() - startNanos;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].matches(destination) && !acquire(userBuckets, i, rules[i], now)) {
+                // Give back the tokens taken by the rules that passed
+                for (int j = 0; j < i; j++) {
+                    if (rules[j].matches(destination)) {
+                        userBuckets.addAndGet(j, -rules[j].intervalNanos());
+                    }
+                }
+                reject(accessor, destination);
+                return null;
+            }
+        }
+        return message;
+    }
+
+    public long getRejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Forget users whose buckets have refilled, they would start from a full bucket anyway
+     */
+    @Scheduled(fixedDelayString = "${chat.rate-limit.sweep-interval-ms:60000}")
+    public void sweepIdleBuckets() {
+        long now = nanoClock.getAsLong() - startNanos;
+        buckets.values().removeIf(userBuckets -> {
+            for (int i = 0; i < userBuckets.length(); i++) {
+                if (userBuckets.get(i) > now) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private static boolean acquire(AtomicLongArray userBuckets, int index, Rule rule, long now) {
+        while (true) {
+            long tat = userBuckets.get(index);
+            long next = Math.max(tat, now) + rule.intervalNanos();
+            if (next - now > rule.limitNanos()) {
+                return false;
+            }
+            if (userBuckets.compareAndSet(index, tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(StompHeaderAccessor accessor, String destination) {
+        if (isDroppable(destination)) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        rejectedFrames.incrementAndGet();
+        log.warn("Rate limit exceeded by {} on {}, closing session {}",
+                accessor.getUser() != null ? accessor.getUser().getName() : null, destination, accessor.getSessionId());
+
+        StompHeaderAccessor error = StompHeaderAccessor.create(StompCommand.ERROR);
+        error.setMessage("Rate limit exceeded for " + destination);
+        error.setSessionId(accessor.getSessionId());
+        clientOutboundChannel.send(MessageBuilder.createMessage(new byte[0], error.getMessageHeaders()));
+    }
+
+    private boolean isDroppable(String destination) {
+        for (Rule rule : rules) {
+            if (rule.drop() && rule.matches(destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Rule(String destination, boolean prefix, long intervalNanos, long limitNanos, boolean drop) {
+
+        static Rule parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length < 3 || parts.length > 4 || (parts.length == 4 && !"drop".equals(parts[3]))) {
+                throw new IllegalStateException("Invalid rate limit rule '" + spec + "', expected destination:perSecond:burst[:drop]");
+            }
+            double perSecond = Double.parseDouble(parts[1]);
+            int burst = Integer.parseInt(parts[2]);
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalStateException("Invalid rate limit rule '" + spec + "', rate and burst must be positive");
+            }
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            String destination = parts[0];
+            boolean prefix = destination.endsWith("*");
+            return new Rule(prefix ? destination.substring(0, destination.length() - 1) : destination,
+                    prefix, interval, interval * burst, parts.length == 4);
+        }
+
+        boolean matches(String target) {
+            return prefix ? target.startsWith(destination) : target.equals(destination);
+        }
+    }
+}
@@ -37,6 +37,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/ws/**").permitAll()
+                .requestMatchers("/ws-native/**").permitAll()
                 .requestMatchers("/api/files/**").permitAll()
                 .anyRequest().authenticated()
                 .and()
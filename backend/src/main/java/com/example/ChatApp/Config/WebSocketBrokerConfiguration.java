@@ -0,0 +1,36 @@
+package com.example.ChatApp.Config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+import java.util.List;
+
+/**
+ * What {@code @EnableWebSocketMessageBroker} imports, with Spring's session handler replaced
+ * by {@link BackpressureWebSocketHandler}: the handler is where sessions get their send
+ * buffer, so it is the only place the overflow behaviour can be changed. Endpoints, broker
+ * and channels are still configured by {@link WebSocketConfig}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Value("${chat.websocket.overflow-policy:DROP_DROPPABLE}")
+    private BackpressureWebSocketHandler.OverflowPolicy overflowPolicy;
+
+    // Frames to these destinations are superseded by the next one and may be dropped
+    @Value("${chat.websocket.droppable-destinations:/topic/online,/topic/status,/user/queue/read,/user/queue/typing}")
+    private List<String> droppableDestinations;
+
+    @Bean
+    @Override
+    public BackpressureWebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+        return new BackpressureWebSocketHandler(clientInboundChannel, clientOutboundChannel,
+                overflowPolicy, droppableDestinations);
+    }
+}
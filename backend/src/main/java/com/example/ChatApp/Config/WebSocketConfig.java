@@ -1,42 +1,145 @@
 package com.example.ChatApp.Config;
 
+import com.example.ChatApp.Models.Enums.PayloadEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
 
+import java.util.List;
+
+// The message broker itself is enabled by WebSocketBrokerConfiguration
 @Configuration
-@EnableWebSocketMessageBroker
 @Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Autowired
     private JwtAuthenticationInterceptor authChannelInterceptor;
 
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @Autowired
+    private PayloadEncodingInterceptor payloadEncodingInterceptor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ChannelExecutors channelExecutors;
+
     @Value("${frontend.url}")
     private String frontEndURL;
 
+    @Value("${chat.websocket.native.enabled:true}")
+    private boolean nativeEndpointEnabled;
+
+    @Value("${chat.websocket.permessage-deflate:true}")
+    private boolean permessageDeflate;
+
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+
+    // Handle and deliver messages of one session in the order they were sent
+    @Value("${chat.websocket.preserve-order:true}")
+    private boolean preserveOrder;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry){
+        registry.setPreserveReceiveOrder(preserveOrder);
         registry.addEndpoint("/ws")
                 .setAllowedOrigins(frontEndURL)
                 .withSockJS();
+
+        // Plain WebSocket for clients that do not need the SockJS fallbacks
+        if (nativeEndpointEnabled) {
+            registry.addEndpoint("/ws-native")
+                    .setAllowedOrigins(frontEndURL)
+                    .setHandshakeHandler(new NativeHandshakeHandler(permessageDeflate));
+        }
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/public", "/queue");
+        registry.enableSimpleBroker("/public", "/queue", "/topic");
         registry.setUserDestinationPrefix("/user");
+        registry.setPreservePublishOrder(preserveOrder);
+        if (channelExecutors.broker() != null) {
+            registry.configureBrokerChannel().executor(channelExecutors.broker());
+        }
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(authChannelInterceptor);
+        registration.interceptors(authChannelInterceptor, rateLimitInterceptor, payloadEncodingInterceptor)
+                .executor(channelExecutors.inbound());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadEncodingInterceptor)
+                .executor(channelExecutors.outbound());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimit);
+
+        // SockJS frames are text only, binary payload encodings need a plain WebSocket
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                session.getAttributes().put(PayloadEncodingInterceptor.BINARY_FRAMES_ATTRIBUTE,
+                        !(WebSocketSessionDecorator.unwrap(session) instanceof SockJsSession));
+                super.afterConnectionEstablished(session);
+            }
+        });
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // The JSON converter registered by Spring Boot (configured before this one) keeps the object
+        // it serialized, so binary sessions encode that object instead of re-encoding the JSON
+        messageConverters.replaceAll(converter -> converter instanceof MappingJackson2MessageConverter json
+                ? payloadEncodingInterceptor.retainingSource(json)
+                : converter);
+
+        // Binary bodies sent by clients; only used when the frame declares that content type
+        messageConverters.add(binaryConverter(PayloadEncoding.CBOR, new CBORFactory()));
+        messageConverters.add(binaryConverter(PayloadEncoding.SMILE, new SmileFactory()));
+        return true;
+    }
+
+    private MappingJackson2MessageConverter binaryConverter(PayloadEncoding encoding, JsonFactory factory) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(encoding.getMimeType());
+        converter.setObjectMapper(objectMapper.copyWith(factory));
+        converter.setStrictContentTypeMatch(true);
+        // Outgoing bodies of sessions that negotiated this encoding use the same mapper
+        payloadEncodingInterceptor.register(encoding, converter.getObjectMapper());
+        return converter;
     }
 }
@@ -0,0 +1,80 @@
+package com.example.ChatApp.Controllers;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.AttachmentInitRequest;
+import com.example.ChatApp.Models.DTOs.AttachmentUploadDTO;
+import com.example.ChatApp.Services.AttachmentService;
+import com.example.ChatApp.Services.MessageDeliveryService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Resumable attachment uploads:
+ * POST / to start, PUT /{uploadId}/chunks/{index} with the raw chunk bytes and an
+ * X-Chunk-Checksum header (hex SHA-256), GET /{uploadId} for the missing chunks,
+ * POST /{uploadId}/commit to send the message.
+ */
+@RestController
+@RequestMapping("/api/attachments")
+@RequiredArgsConstructor
+public class AttachmentController {
+    private final AttachmentService attachmentService;
+    private final MessageDeliveryService messageDeliveryService;
+
+    private static final String PRIVATE_IMMUTABLE = "private, max-age=31536000, immutable";
+
+    @PostMapping("")
+    public AttachmentUploadDTO initUpload(@RequestBody AttachmentInitRequest request,
+                                          Principal principal) throws IOException {
+        return attachmentService.init(principal.getName(), request);
+    }
+
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public AttachmentUploadDTO uploadChunk(@PathVariable String uploadId,
+                                           @PathVariable int index,
+                                           @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksum,
+                                           HttpServletRequest request,
+                                           Principal principal) throws IOException {
+        // Read the body as a stream, it must not go through a message converter
+        return attachmentService.writeChunk(principal.getName(), uploadId, index, checksum, request.getInputStream());
+    }
+
+    @GetMapping("/{uploadId}")
+    public AttachmentUploadDTO getUpload(@PathVariable String uploadId, Principal principal) {
+        return attachmentService.getStatus(principal.getName(), uploadId);
+    }
+
+    @PostMapping("/{uploadId}/commit")
+    public ChatMessage commitUpload(@PathVariable String uploadId, Principal principal) throws IOException {
+        ChatMessage chatMessage = attachmentService.commit(principal.getName(), uploadId);
+
+        messageDeliveryService.deliver(chatMessage);
+        return chatMessage;
+    }
+
+    @GetMapping("/{uploadId}/content")
+    public void getContent(@PathVariable String uploadId,
+                           Principal principal,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        Optional<AttachmentService.Attachment> attachment = attachmentService.getContent(principal.getName(), uploadId);
+        if (attachment.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(attachment.get().fileName(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        FileResponses.serve(attachment.get().file(), PRIVATE_IMMUTABLE, request, response);
+    }
+}
@@ -48,7 +48,7 @@ public class AuthController {
         user = userRepository.save(user);
 
         UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
-        String jwt = jwtService.generateToken(userDetails);
+        String jwt = jwtService.generateToken(userDetails, user.getId());
 
         AuthResponse authResponse = AuthResponse.builder()
                 .id(user.getId())
@@ -69,10 +69,10 @@ public class AuthController {
         );
 
         final UserDetails userDetails = userDetailsService.loadUserByUsername(request.getEmail());
-        final String jwt = jwtService.generateToken(userDetails);
-
         User user = userRepository.findByEmail(request.getEmail()).get();
 
+        final String jwt = jwtService.generateToken(userDetails, user.getId());
+
         AuthResponse authResponse = AuthResponse.builder()
                 .id(user.getId())
                 .name(user.getName())
@@ -1,13 +1,21 @@
 package com.example.ChatApp.Controllers;
 
 import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.AckRequest;
 import com.example.ChatApp.Models.DTOs.ChatMessageRequest;
+import com.example.ChatApp.Models.DTOs.PendingMessagesDTO;
+import com.example.ChatApp.Models.DTOs.ReadReceiptRequest;
+import com.example.ChatApp.Models.DTOs.ResyncPageDTO;
+import com.example.ChatApp.Models.DTOs.ResyncRequest;
 import com.example.ChatApp.Services.ChatMessageService;
+import com.example.ChatApp.Services.MessageDeliveryService;
+import com.example.ChatApp.Services.ReadReceiptService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
@@ -16,14 +24,49 @@ import java.security.Principal;
 @RequiredArgsConstructor
 public class ChatController {
     private final ChatMessageService chatMessageService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ReadReceiptService readReceiptService;
+    private final MessageDeliveryService messageDeliveryService;
 
+    /**
+     * The stored message is echoed to the sending session, also when the send was a retry
+     */
     @MessageMapping("/chat")
-    public void sendMessage(@Payload ChatMessageRequest request, Principal principal) {
+    @SendToUser(destinations = "/queue/sent", broadcast = false)
+    public ChatMessage sendMessage(@Payload ChatMessageRequest request, Principal principal) {
         request.setSenderId(principal.getName());
-        ChatMessage chatMessage = chatMessageService.addChatMessage(request);
+        ChatMessageService.AddedMessage added = chatMessageService.addChatMessage(request);
 
-        messagingTemplate.convertAndSendToUser(request.getReceiverId(), "/queue/messages", chatMessage);
+        if (!added.duplicate()) {
+            messageDeliveryService.deliver(added.message());
+        }
+        return added.message();
+    }
+
+    @MessageMapping("/chat.ack")
+    public void acknowledge(@Payload AckRequest request, Principal principal) {
+        messageDeliveryService.acknowledge(principal.getName(), request);
+    }
+
+    /**
+     * Messages not acknowledged yet, sent once to a client subscribing to /app/pending
+     */
+    @SubscribeMapping("/pending")
+    public PendingMessagesDTO getPendingMessages(Principal principal) {
+        return messageDeliveryService.pending(principal.getName());
+    }
+
+    @MessageMapping("/chat.read")
+    public void markRead(@Payload ReadReceiptRequest request, Principal principal) {
+        readReceiptService.markRead(principal.getName(), request);
+    }
+
+    /**
+     * Messages missed while disconnected, answered to the requesting session only
+     */
+    @MessageMapping("/chat.resync")
+    @SendToUser(destinations = "/queue/resync", broadcast = false)
+    public ResyncPageDTO resync(@Payload ResyncRequest request, Principal principal) {
+        return chatMessageService.resync(principal.getName(), request);
     }
 
     @MessageMapping("/chat.addUser")
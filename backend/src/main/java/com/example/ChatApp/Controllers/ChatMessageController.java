@@ -1,14 +1,23 @@
 package com.example.ChatApp.Controllers;
 
 import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.MessagePageDTO;
 import com.example.ChatApp.Services.ChatMessageService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/message")
@@ -16,9 +25,57 @@ import java.util.List;
 public class ChatMessageController {
     private final ChatMessageService chatMessageService;
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     @GetMapping("/{senderId}/{receiverId}")
     public List<ChatMessage> getMessagesBySenderAndReceiver(@PathVariable String senderId,
                                                             @PathVariable String receiverId) {
         return chatMessageService.getChatMessagesBySenderAndReceiver(senderId, receiverId);
     }
+
+    /**
+     * Cursor-paginated history, newest message first
+     *
+     * @param before cursor from a previous page, returns older messages
+     * @param after  cursor of a known message, returns newer messages
+     * @param size   page size (1-200, default 50)
+     */
+    @GetMapping("/{senderId}/{receiverId}/page")
+    public MessagePageDTO getMessagePage(@PathVariable String senderId,
+                                         @PathVariable String receiverId,
+                                         @RequestParam(required = false) String before,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(defaultValue = "50") int size) {
+        int pageSize = Math.max(1, Math.min(size, 200));
+        return chatMessageService.getChatMessagePage(senderId, receiverId, before, after, pageSize);
+    }
+
+    /**
+     * Stream the whole conversation as NDJSON (one message per line, oldest first)
+     *
+     * @param gzip compress the response with gzip content encoding
+     */
+    @GetMapping("/{senderId}/{receiverId}/export")
+    public ResponseEntity<StreamingResponseBody> exportMessages(@PathVariable String senderId,
+                                                                @PathVariable String receiverId,
+                                                                @RequestParam(defaultValue = "false") boolean gzip) {
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = gzip
+                    ? new GZIPOutputStream(outputStream, EXPORT_BUFFER_SIZE)
+                    : new BufferedOutputStream(outputStream, EXPORT_BUFFER_SIZE);
+            try (out) {
+                chatMessageService.exportChatMessages(senderId, receiverId, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"chat-" + senderId + "-" + receiverId + ".ndjson\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
 }
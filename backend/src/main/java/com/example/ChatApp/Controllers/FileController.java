@@ -1,18 +1,14 @@
 package com.example.ChatApp.Controllers;
 
 import com.example.ChatApp.Services.FileStorageService;
+import com.example.ChatApp.Services.FileStorageService.FileMetadata;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/files")
@@ -22,32 +18,31 @@ public class FileController {
     private final FileStorageService fileStorageService;
 
     /**
-     * Serve avatar files
+     * Serve avatar files. Names are unique per upload, so responses are cached as immutable.
+     *
+     * @param size display size in pixels, serves the smallest thumbnail variant covering it
      */
     @GetMapping("/avatars/{filename}")
-    public ResponseEntity<Resource> getAvatar(@PathVariable String filename) {
-        try {
-            Path filePath = fileStorageService.getAvatarPath(filename);
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            // Determine content type
-            String contentType;
-            try {
-                contentType = Files.probeContentType(filePath);
-            } catch (IOException e) {
-                contentType = "application/octet-stream";
+    public void getAvatar(@PathVariable String filename,
+                          @RequestParam(required = false) Integer size,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        String cacheControl = FileResponses.IMMUTABLE;
+        if (size != null && size > 0) {
+            Optional<FileMetadata> variant = fileStorageService.getAvatarVariantMetadata(filename, size);
+            if (variant.isPresent()) {
+                FileResponses.serve(variant.get(), cacheControl, request, response);
+                return;
             }
+            // The variant may still be rendering, do not pin the original to this URL
+            cacheControl = FileResponses.SHORT_LIVED;
+        }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=86400") // Cache for 1 day
-                    .body(resource);
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+        Optional<FileMetadata> avatar = fileStorageService.getAvatarMetadata(filename);
+        if (avatar.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+        FileResponses.serve(avatar.get(), cacheControl, request, response);
     }
 }
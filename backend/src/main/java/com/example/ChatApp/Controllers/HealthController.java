@@ -1,14 +1,44 @@
 package com.example.ChatApp.Controllers;
 
+import com.example.ChatApp.Config.BackpressureWebSocketHandler;
+import com.example.ChatApp.Config.ChannelExecutors;
+import com.example.ChatApp.Config.RateLimitInterceptor;
+import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @RestController()
 @RequestMapping("/api/health")
+@RequiredArgsConstructor
 public class HealthController {
+    private final ChannelExecutors channelExecutors;
+    private final WebSocketMessageBrokerStats webSocketMessageBrokerStats;
+    private final BackpressureWebSocketHandler backpressureWebSocketHandler;
+    private final RateLimitInterceptor rateLimitInterceptor;
+
     @GetMapping()
     public String health() {
         return "Hello World";
     }
+
+    /**
+     * Channel executor load, slow-consumer and rate limit counters, and Spring's WebSocket session counters
+     */
+    @GetMapping("/websocket")
+    public Map<String, Object> websocket() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executors", channelExecutors.stats());
+        stats.put("backpressure", backpressureWebSocketHandler.stats());
+        stats.put("rateLimit", Map.of(
+                "rejectedFrames", rateLimitInterceptor.getRejectedFrames(),
+                "droppedFrames", rateLimitInterceptor.getDroppedFrames()));
+        stats.put("sessions", webSocketMessageBrokerStats.getWebSocketSessionStats());
+        stats.put("stompSubProtocol", webSocketMessageBrokerStats.getStompSubProtocolStats());
+        return stats;
+    }
 }
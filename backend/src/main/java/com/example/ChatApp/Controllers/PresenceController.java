@@ -0,0 +1,22 @@
+package com.example.ChatApp.Controllers;
+
+import com.example.ChatApp.Models.DTOs.PresenceSnapshot;
+import com.example.ChatApp.Services.PresenceRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+@Controller
+@RequiredArgsConstructor
+public class PresenceController {
+    private final PresenceRegistry presenceRegistry;
+
+    /**
+     * Full list of online users, sent once to a client subscribing to /app/online.
+     * Later changes arrive as deltas on /topic/online.
+     */
+    @SubscribeMapping("/online")
+    public PresenceSnapshot getOnlineUsers() {
+        return presenceRegistry.snapshot();
+    }
+}
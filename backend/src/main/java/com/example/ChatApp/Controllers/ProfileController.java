@@ -124,15 +124,23 @@ public class ProfileController {
                 .orElseThrow(() -> new UserNotFoundException("id", userId));
 
         try {
-            // Delete old avatar if exists
-            if (user.getAvatarUrl() != null) {
-                fileStorageService.deleteAvatar(user.getAvatarUrl());
-            }
-
-            // Store new avatar
+            // Store new avatar; the old one is released only once the user points away from it,
+            // so re-uploading the same image never drops its file in between
+            String oldAvatarUrl = user.getAvatarUrl();
             String avatarUrl = fileStorageService.storeAvatar(file, userId);
             user.setAvatarUrl(avatarUrl);
-            User savedUser = userRepository.save(user);
+            User savedUser;
+            try {
+                savedUser = userRepository.save(user);
+            } catch (RuntimeException e) {
+                fileStorageService.deleteAvatar(avatarUrl);
+                throw e;
+            }
+
+            // Release old avatar if exists
+            if (oldAvatarUrl != null) {
+                fileStorageService.deleteAvatar(oldAvatarUrl);
+            }
 
             return ResponseEntity.ok(userMapper.toDTO(savedUser));
         } catch (IllegalArgumentException e) {
@@ -152,10 +160,11 @@ public class ProfileController {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserNotFoundException("id", userId));
 
-        if (user.getAvatarUrl() != null) {
-            fileStorageService.deleteAvatar(user.getAvatarUrl());
+        String avatarUrl = user.getAvatarUrl();
+        if (avatarUrl != null) {
             user.setAvatarUrl(null);
             userRepository.save(user);
+            fileStorageService.deleteAvatar(avatarUrl);
         }
 
         return ResponseEntity.ok(Map.of("message", "Avatar deleted successfully"));
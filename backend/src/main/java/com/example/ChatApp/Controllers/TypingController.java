@@ -0,0 +1,24 @@
+package com.example.ChatApp.Controllers;
+
+import com.example.ChatApp.Models.DTOs.TypingRequest;
+import com.example.ChatApp.Services.TypingService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+
+@Controller
+@RequiredArgsConstructor
+public class TypingController {
+    private final TypingService typingService;
+
+    /**
+     * Typing started or stopped; never persisted, see TypingService
+     */
+    @MessageMapping("/typing")
+    public void typing(@Payload TypingRequest request, Principal principal) {
+        typingService.typing(principal.getName(), request);
+    }
+}
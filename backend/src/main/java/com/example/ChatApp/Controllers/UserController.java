@@ -1,11 +1,15 @@
 package com.example.ChatApp.Controllers;
 
 import com.example.ChatApp.Models.DTOs.ConversationDTO;
+import com.example.ChatApp.Models.DTOs.DirectoryPageDTO;
 import com.example.ChatApp.Models.DTOs.UserDTO;
+import com.example.ChatApp.Services.UserDirectoryService;
 import com.example.ChatApp.Services.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -14,12 +18,41 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final UserDirectoryService userDirectoryService;
 
+    /**
+     * Every user with all profile fields. Prefer the paginated directory for listings.
+     */
     @GetMapping("")
     public List<UserDTO> getAllUsers() {
         return userService.getAllUsers();
     }
 
+    /**
+     * Paginated user directory (id, name, username, avatarUrl only).
+     * Responses carry a directory-wide ETag; a matching If-None-Match gets a 304.
+     *
+     * @param sort   username or name
+     * @param cursor cursor from a previous page
+     * @param size   page size (1-200, default 50)
+     */
+    @GetMapping("/directory")
+    public ResponseEntity<DirectoryPageDTO> getDirectory(
+            @RequestParam(defaultValue = "username") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            WebRequest request) {
+        String etag = userDirectoryService.etag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        DirectoryPageDTO page = userDirectoryService.getPage(sort, cursor, Math.max(1, Math.min(size, 200)));
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(page);
+    }
+
     @GetMapping("/{id}")
     public UserDTO getUserById(@PathVariable String id) {
         return userService.getUser(id);
@@ -42,12 +75,19 @@ public class UserController {
     }
 
     /**
-     * Get all conversations for a user (users they have chatted with before)
+     * Get conversations for a user (users they have chatted with before)
      * Returns conversation info sorted by last message time
+     *
+     * @param page zero-based page number
+     * @param size page size (1-200, default 50)
      */
     @GetMapping("/{userId}/conversations")
-    public ResponseEntity<List<ConversationDTO>> getConversations(@PathVariable String userId) {
-        List<ConversationDTO> conversations = userService.getConversations(userId);
+    public ResponseEntity<List<ConversationDTO>> getConversations(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        List<ConversationDTO> conversations = userService.getConversations(
+                userId, Math.max(0, page), Math.max(1, Math.min(size, 200)));
         return ResponseEntity.ok(conversations);
     }
 }
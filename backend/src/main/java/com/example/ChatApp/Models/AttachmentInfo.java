@@ -0,0 +1,27 @@
+package com.example.ChatApp.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * File referenced by an ATTACHMENT message. The id is the upload id, content is
+ * served from /api/attachments/{id}/content.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentInfo {
+    private String id;
+
+    private String fileName;
+
+    private String contentType;
+
+    private long size;
+
+    // Hex SHA-256 of the whole file
+    private String sha256;
+}
@@ -0,0 +1,63 @@
+package com.example.ChatApp.Models;
+
+import com.example.ChatApp.Models.Enums.UploadStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State of a chunked attachment upload. Verified chunks are copied into a part file
+ * at their offset; the indexes received so far are tracked here so an interrupted
+ * upload resumes with the missing chunks only.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "attachment_uploads")
+@CompoundIndexes({
+        @CompoundIndex(name = "status_updated_idx", def = "{'status': 1, 'updatedAt': 1}")
+})
+public class AttachmentUpload {
+    @Id
+    private String id;
+
+    private String uploaderId;
+
+    private String receiverId;
+
+    private String fileName;
+
+    private String contentType;
+
+    private long size;
+
+    private int chunkSize;
+
+    private int totalChunks;
+
+    private Set<Integer> receivedChunks;
+
+    // Chunks being copied into the part file, by index, with the time they were claimed
+    private Map<String, Instant> writingChunks;
+
+    // Hex SHA-256 of the whole file announced by the client, verified on commit if set
+    private String sha256;
+
+    private UploadStatus status;
+
+    private String messageId;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+}
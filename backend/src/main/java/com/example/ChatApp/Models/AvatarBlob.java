@@ -0,0 +1,42 @@
+package com.example.ChatApp.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A stored avatar image, identified by the SHA-256 of its content.
+ * Users referencing the same image share one file; it is removed once no user
+ * references it anymore and the grace period has passed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "avatar_blobs")
+@CompoundIndexes({
+        @CompoundIndex(name = "ref_count_updated_idx", def = "{'refCount': 1, 'updatedAt': 1}")
+})
+public class AvatarBlob {
+    // Hex SHA-256 of the content
+    @Id
+    private String id;
+
+    // Extension of the first upload, part of the file name so the content type can be derived
+    private String extension;
+
+    private long size;
+
+    private long refCount;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+}
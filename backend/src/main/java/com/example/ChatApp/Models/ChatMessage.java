@@ -12,9 +12,14 @@ import java.time.Instant;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 @Document(collection = "chat_messages")
 @CompoundIndexes({
-        @CompoundIndex(name = "chat_timestamp_idx", def = "{'chatId': 1, 'timestamp': -1}")
+        @CompoundIndex(name = "chat_timestamp_id_idx", def = "{'chatId': 1, 'timestamp': -1, '_id': -1}"),
+        @CompoundIndex(name = "chat_seq_idx", def = "{'chatId': 1, 'seq': 1}"),
+        @CompoundIndex(name = "sender_client_message_idx", def = "{'senderId': 1, 'clientMessageId': 1}",
+                unique = true, partialFilter = "{'clientMessageId': {$exists: true}}")
 })
 public class ChatMessage {
     @Id
@@ -31,6 +36,19 @@ public class ChatMessage {
 
     private String content;
 
+    // Id the sending client gave the message, to recognize retries
+    private String clientMessageId;
+
+    // Increases with every message of the chat, null for messages stored before sequencing
+    private Long seq;
+
+    // Null for messages stored before types were recorded, read as CHAT
+    @Builder.Default
+    private MessageType type = MessageType.CHAT;
+
+    // Set for ATTACHMENT messages
+    private AttachmentInfo attachment;
+
     @Builder.Default
     @Indexed
     private Instant timestamp = Instant.now();
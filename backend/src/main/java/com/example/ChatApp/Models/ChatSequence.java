@@ -0,0 +1,25 @@
+package com.example.ChatApp.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Highest message sequence number handed out for a chat room.
+ * Servers reserve numbers in blocks with an atomic {@code $inc}, see ChatSequenceService.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "chat_sequences")
+public class ChatSequence {
+    // The chat room id
+    @Id
+    private String id;
+
+    private long value;
+}
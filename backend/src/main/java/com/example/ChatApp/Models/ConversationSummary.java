@@ -0,0 +1,53 @@
+package com.example.ChatApp.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * One user's view of a conversation, kept up to date on every send.
+ * The id is derived from (userId, roomId) so updates are plain upserts by id.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "conversation_summaries")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_last_message_idx", def = "{'userId': 1, 'lastMessageTime': -1}")
+})
+public class ConversationSummary {
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String roomId;
+
+    private String otherUserId;
+
+    private String lastMessage;
+
+    private Instant lastMessageTime;
+
+    private String lastMessageSenderId;
+
+    private long messageCount;
+
+    private long unreadCount;
+
+    private Instant lastReadAt;
+
+    private String lastReadMessageId;
+
+    public static String idFor(String userId, String roomId) {
+        return userId + ":" + roomId;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AckRequest {
+    // Ids of the messages the client has received; pushes may arrive out of seq order,
+    // so only what actually arrived is acknowledged
+    private List<String> messageIds;
+}
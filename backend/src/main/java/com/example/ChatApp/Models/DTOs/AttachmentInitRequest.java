@@ -0,0 +1,13 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.Data;
+
+@Data
+public class AttachmentInitRequest {
+    private String receiverId;
+    private String fileName;
+    private String contentType;
+    private long size;
+    // Optional hex SHA-256 of the whole file
+    private String sha256;
+}
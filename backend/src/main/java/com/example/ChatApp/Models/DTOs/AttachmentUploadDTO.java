@@ -0,0 +1,30 @@
+package com.example.ChatApp.Models.DTOs;
+
+import com.example.ChatApp.Models.Enums.UploadStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentUploadDTO {
+    private String uploadId;
+
+    private UploadStatus status;
+
+    private long size;
+
+    private int chunkSize;
+
+    private int totalChunks;
+
+    // Chunk indexes still to send, ascending
+    private List<Integer> missingChunks;
+
+    private String messageId;
+}
@@ -0,0 +1,24 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackpressureStatsDTO {
+    // DROP_DROPPABLE or DISCONNECT
+    private String overflowPolicy;
+
+    // Sessions with messages queued behind a write that has not finished yet
+    private int throttledSessions;
+
+    // Presence, read receipt and heartbeat frames dropped since startup
+    private long droppedMessages;
+
+    // Sessions closed for exceeding the send time or buffer limit since startup
+    private long disconnectedSessions;
+}
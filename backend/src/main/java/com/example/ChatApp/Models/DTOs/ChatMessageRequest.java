@@ -7,4 +7,6 @@ public class ChatMessageRequest {
     private String senderId;
     private String receiverId;
     private String content;
+    // Optional, generated by the client; a retry with the same id returns the stored message
+    private String clientMessageId;
 }
@@ -0,0 +1,20 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectoryEntryDTO {
+    private String id;
+
+    private String name;
+
+    private String username;
+
+    private String avatarUrl;
+}
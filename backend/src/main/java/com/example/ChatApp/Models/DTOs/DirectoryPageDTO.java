@@ -0,0 +1,19 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectoryPageDTO {
+    private List<DirectoryEntryDTO> users;
+    // Cursor of the next page, null when there is nothing more
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,30 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecutorStatsDTO {
+    // platform or virtual
+    private String mode;
+
+    // Threads in the pool, 0 for virtual threads
+    private int poolSize;
+
+    private int activeThreads;
+
+    // Tasks waiting for a thread, always 0 for virtual threads
+    private int queueSize;
+
+    private int queueCapacity;
+
+    private long completedTasks;
+
+    // Droppable messages discarded because the queue was full
+    private long droppedTasks;
+}
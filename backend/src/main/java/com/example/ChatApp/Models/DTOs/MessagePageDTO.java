@@ -0,0 +1,21 @@
+package com.example.ChatApp.Models.DTOs;
+
+import com.example.ChatApp.Models.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePageDTO {
+    // Newest message first
+    private List<ChatMessage> messages;
+    // Cursor to continue in the same direction, null when there is nothing more
+    private String nextCursor;
+    private boolean hasMore;
+}
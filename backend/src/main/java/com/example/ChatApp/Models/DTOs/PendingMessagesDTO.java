@@ -0,0 +1,20 @@
+package com.example.ChatApp.Models.DTOs;
+
+import com.example.ChatApp.Models.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingMessagesDTO {
+    // Not yet acknowledged, in the order they were sent
+    private List<ChatMessage> messages;
+    // Older messages were dropped from the queue, resync the conversations to get them
+    private boolean overflowed;
+}
@@ -0,0 +1,24 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A single join/leave delta. Versions increase by one per delta, so a client
+ * that sees a gap should re-subscribe to get a fresh snapshot. Deltas at or below
+ * the snapshot's version are already included in it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceEvent {
+    private long version;
+    private String userId;
+    private boolean online;
+    private Instant lastSeen;
+}
@@ -0,0 +1,18 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceSnapshot {
+    // Version of the last delta included in this snapshot
+    private long version;
+    private Set<String> onlineUserIds;
+}
@@ -0,0 +1,19 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadReceiptEvent {
+    private String chatId;
+    private String readerId;
+    private String messageId;
+    private Instant readAt;
+}
@@ -0,0 +1,11 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.Data;
+
+@Data
+public class ReadReceiptRequest {
+    // The other participant of the conversation
+    private String otherUserId;
+    // Last message of the other user that this user has read
+    private String messageId;
+}
@@ -0,0 +1,21 @@
+package com.example.ChatApp.Models.DTOs;
+
+import com.example.ChatApp.Models.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResyncPageDTO {
+    private String chatId;
+    // Oldest message first, all with a sequence number above the requested one
+    private List<ChatMessage> messages;
+    // Request again after the last message's seq to get the rest
+    private boolean hasMore;
+}
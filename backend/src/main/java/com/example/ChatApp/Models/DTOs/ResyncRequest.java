@@ -0,0 +1,11 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.Data;
+
+@Data
+public class ResyncRequest {
+    // The other participant of the conversation
+    private String otherUserId;
+    // Highest sequence number the client has, 0 for everything
+    private long afterSeq;
+}
@@ -0,0 +1,11 @@
+package com.example.ChatApp.Models.DTOs;
+
+import lombok.Data;
+
+@Data
+public class TypingRequest {
+    // The other participant of the conversation
+    private String otherUserId;
+    // False when the user stopped typing, e.g. cleared the input or sent the message
+    private boolean typing;
+}
@@ -0,0 +1,36 @@
+package com.example.ChatApp.Models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in the user directory: value of the sort field (null when the user
+ * has none) plus user id to break ties. Carries the sort field so a cursor cannot be
+ * replayed against another ordering. Encoded as an opaque url-safe token.
+ */
+public record DirectoryCursor(String sort, String value, String userId) {
+
+    public static DirectoryCursor of(String sort, User user) {
+        String value = "name".equals(sort) ? user.getName() : user.getUsername();
+        return new DirectoryCursor(sort, value, user.getId());
+    }
+
+    public static DirectoryCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int first = raw.indexOf(':');
+            int second = raw.indexOf(':', first + 1);
+            String value = raw.substring(second + 1);
+            return new DirectoryCursor(raw.substring(0, first),
+                    value.isEmpty() ? null : value.substring(1), raw.substring(first + 1, second));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+
+    public String encode() {
+        // Value goes last since it may contain the separator; '=' marks a present value
+        String raw = sort + ":" + userId + ":" + (value == null ? "" : "=" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,5 +3,6 @@ package com.example.ChatApp.Models.Enums;
 public enum MessageType {
     CHAT,
     JOIN,
-    LEAVE
+    LEAVE,
+    ATTACHMENT
 }
@@ -0,0 +1,41 @@
+package com.example.ChatApp.Models.Enums;
+
+import org.springframework.util.MimeType;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Encodings of STOMP message bodies a session can negotiate on CONNECT
+ */
+public enum PayloadEncoding {
+    JSON(new MimeType("application", "json")),
+    CBOR(new MimeType("application", "cbor")),
+    SMILE(new MimeType("application", "x-jackson-smile"));
+
+    private final MimeType mimeType;
+
+    PayloadEncoding(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Header value used on the wire, e.g. {@code cbor}
+     */
+    public String token() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Optional<PayloadEncoding> fromToken(String token) {
+        for (PayloadEncoding encoding : values()) {
+            if (encoding.token().equalsIgnoreCase(token.trim())) {
+                return Optional.of(encoding);
+            }
+        }
+        return Optional.empty();
+    }
+}
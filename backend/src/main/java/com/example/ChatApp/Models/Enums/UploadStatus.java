@@ -0,0 +1,7 @@
+package com.example.ChatApp.Models.Enums;
+
+public enum UploadStatus {
+    UPLOADING,
+    COMMITTING,
+    COMMITTED
+}
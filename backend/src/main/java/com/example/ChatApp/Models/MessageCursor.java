@@ -0,0 +1,45 @@
+package com.example.ChatApp.Models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Keyset position in a chat room history: message timestamp (millisecond precision, as stored)
+ * plus message id to break ties. Encoded as an opaque url-safe token.
+ */
+public record MessageCursor(long timestampMillis, String messageId) implements Comparable<MessageCursor> {
+
+    private static final Comparator<MessageCursor> ORDER = Comparator
+            .comparingLong(MessageCursor::timestampMillis)
+            .thenComparing(MessageCursor::messageId);
+
+    public static MessageCursor of(ChatMessage message) {
+        return new MessageCursor(message.getTimestamp().toEpochMilli(), message.getId());
+    }
+
+    public static MessageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new MessageCursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+
+    public String encode() {
+        String raw = timestampMillis + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Instant timestamp() {
+        return Instant.ofEpochMilli(timestampMillis);
+    }
+
+    @Override
+    public int compareTo(MessageCursor other) {
+        return ORDER.compare(this, other);
+    }
+}
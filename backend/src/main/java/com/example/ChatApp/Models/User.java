@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -11,6 +13,10 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 
 @Document(collection = "users")
+@CompoundIndexes({
+        @CompoundIndex(name = "name_id_idx", def = "{'name': 1, '_id': 1}"),
+        @CompoundIndex(name = "username_id_idx", def = "{'username': 1, '_id': 1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
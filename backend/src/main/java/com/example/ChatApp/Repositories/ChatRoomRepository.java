@@ -2,6 +2,7 @@ package com.example.ChatApp.Repositories;
 
 import com.example.ChatApp.Models.ChatRoom;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,4 +12,8 @@ import java.util.Optional;
 public interface ChatRoomRepository extends MongoRepository<ChatRoom, String> {
     Optional<ChatRoom> findByFirstUserIdAndSecondUserId(String firstUserId, String secondUserId);
     List<ChatRoom> findByFirstUserIdOrSecondUserId(String firstUserId, String secondUserId);
+
+    // Find the room of a user pair, whatever order the users were stored in
+    @Query("{ $or: [ { 'firstUserId': ?0, 'secondUserId': ?1 }, { 'firstUserId': ?1, 'secondUserId': ?0 } ] }")
+    List<ChatRoom> findByUserPair(String userId, String otherUserId);
 }
@@ -0,0 +1,14 @@
+package com.example.ChatApp.Repositories;
+
+import com.example.ChatApp.Models.ConversationSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ConversationSummaryRepository extends MongoRepository<ConversationSummary, String> {
+    // Conversations of a user, most recent first (user_last_message_idx)
+    List<ConversationSummary> findByUserIdOrderByLastMessageTimeDesc(String userId, Pageable pageable);
+}
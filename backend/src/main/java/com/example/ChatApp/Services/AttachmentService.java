@@ -0,0 +1,470 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.AttachmentInfo;
+import com.example.ChatApp.Models.AttachmentUpload;
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.AttachmentInitRequest;
+import com.example.ChatApp.Models.DTOs.AttachmentUploadDTO;
+import com.example.ChatApp.Models.Enums.UploadStatus;
+import com.example.ChatApp.Services.FileStorageService.FileMetadata;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Chunked, resumable attachment uploads: init announces the file, each chunk is staged in a
+ * temp file and checked against its SHA-256 before it is copied to its offset in the part
+ * file, commit verifies the whole file and turns it into an ATTACHMENT message. Nothing is
+ * buffered in memory beyond one I/O buffer.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentService {
+    private final MongoTemplate mongoTemplate;
+    private final FileStorageService fileStorageService;
+    private final ChatMessageService chatMessageService;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${chat.attachments.chunk-size:1048576}")
+    private int chunkSize;
+
+    @Value("${chat.attachments.max-size:104857600}")
+    private long maxSize;
+
+    @Value("${chat.attachments.stale-upload-ms:86400000}")
+    private long staleUploadMs;
+
+    // A chunk claim older than this is taken to be from a writer that died, and can be claimed again
+    @Value("${chat.attachments.chunk-claim-timeout-ms:300000}")
+    private long chunkClaimTimeoutMs;
+
+    // A commit in progress for longer than this is taken to be from a server that died
+    @Value("${chat.attachments.commit-timeout-ms:600000}")
+    private long commitTimeoutMs;
+
+    /**
+     * Start an upload; the response tells the client the chunk size to use
+     */
+    public AttachmentUploadDTO init(String uploaderId, AttachmentInitRequest request) throws IOException {
+        if (request.getReceiverId() == null || request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new IllegalArgumentException("receiverId and fileName are required");
+        }
+        if (request.getSize() <= 0 || request.getSize() > maxSize) {
+            throw new IllegalArgumentException("File size must be between 1 and " + maxSize + " bytes");
+        }
+        if (request.getSha256() != null && !request.getSha256().matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("sha256 must be a hex SHA-256 digest");
+        }
+
+        Instant now = Instant.now();
+        AttachmentUpload upload = AttachmentUpload.builder()
+                .id(new ObjectId().toHexString())
+                .uploaderId(uploaderId)
+                .receiverId(request.getReceiverId())
+                .fileName(Path.of(request.getFileName()).getFileName().toString())
+                .contentType(request.getContentType() != null ? request.getContentType() : "application/octet-stream")
+                .size(request.getSize())
+                .chunkSize(chunkSize)
+                .totalChunks((int) ((request.getSize() + chunkSize - 1) / chunkSize))
+                .receivedChunks(new HashSet<>())
+                .writingChunks(new HashMap<>())
+                .sha256(request.getSha256() != null ? request.getSha256().toLowerCase() : null)
+                .status(UploadStatus.UPLOADING)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+
+        Files.createFile(fileStorageService.getAttachmentPartPath(upload.getId()));
+        mongoTemplate.insert(upload);
+        return toDTO(upload);
+    }
+
+    /**
+     * Stage one chunk in a temp file and verify it, then claim its index and copy it to its
+     * offset in the part file. Only a verified chunk ever touches the part file, and only one
+     * writer per index, so a broken or concurrent transfer never corrupts received data.
+     *
+     * @param checksum hex SHA-256 of the chunk
+     */
+    public AttachmentUploadDTO writeChunk(String uploaderId, String uploadId, int index,
+                                          String checksum, InputStream body) throws IOException {
+        AttachmentUpload upload = getOwnUpload(uploaderId, uploadId);
+        if (upload.getStatus() != UploadStatus.UPLOADING) {
+            throw new IllegalStateException("Upload is already committed");
+        }
+        if (index < 0 || index >= upload.getTotalChunks()) {
+            throw new IllegalArgumentException("Chunk index out of range");
+        }
+        if (checksum == null) {
+            throw new IllegalArgumentException("Chunk checksum is required");
+        }
+        if (upload.getReceivedChunks().contains(index)) {
+            return toDTO(upload);
+        }
+
+        long offset = (long) index * upload.getChunkSize();
+        long expected = Math.min(upload.getChunkSize(), upload.getSize() - offset);
+        Path part = fileStorageService.getAttachmentPartPath(uploadId);
+        Path staged = Files.createTempFile(part.getParent(), ".chunk-", ".tmp");
+        try {
+            stage(body, staged, index, expected, checksum);
+
+            Instant claimedAt = claim(uploadId, index);
+            if (claimedAt == null) {
+                AttachmentUpload current = getOwnUpload(uploaderId, uploadId);
+                if (current.getStatus() != UploadStatus.UPLOADING) {
+                    throw new IllegalStateException("Upload is already committed");
+                }
+                if (current.getReceivedChunks().contains(index)) {
+                    return toDTO(current);
+                }
+                throw new IllegalStateException("Chunk " + index + " is already being written");
+            }
+
+            String claim = "writingChunks." + index;
+            try {
+                copy(staged, part, offset, expected);
+            } catch (IOException | RuntimeException e) {
+                // Let a retry claim the index again
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(uploadId).and(claim).is(claimedAt)),
+                        new Update().unset(claim), AttachmentUpload.class);
+                throw e;
+            }
+
+            AttachmentUpload updated = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(uploadId).and(claim).is(claimedAt)),
+                    new Update().addToSet("receivedChunks", index).unset(claim).set("updatedAt", Instant.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    AttachmentUpload.class);
+            // Null if the claim timed out and another writer took the index over
+            return toDTO(updated != null ? updated : getOwnUpload(uploaderId, uploadId));
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Current state of an upload, used to resume after an interruption
+     */
+    public AttachmentUploadDTO getStatus(String uploaderId, String uploadId) {
+        return toDTO(getOwnUpload(uploaderId, uploadId));
+    }
+
+    /**
+     * Verify the complete file, move it in place and create its ATTACHMENT message
+     */
+    public ChatMessage commit(String uploaderId, String uploadId) throws IOException {
+        AttachmentUpload upload = getOwnUpload(uploaderId, uploadId);
+        if (upload.getReceivedChunks().size() < upload.getTotalChunks()) {
+            throw new IllegalArgumentException((upload.getTotalChunks() - upload.getReceivedChunks().size())
+                    + " chunks are still missing");
+        }
+
+        // Claim the commit so concurrent or repeated commits do not create two messages;
+        // no chunk may be mid-copy, and none can be claimed once the status has changed
+        AttachmentUpload claimed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(uploadId).and("status").is(UploadStatus.UPLOADING)
+                        .orOperator(Criteria.where("writingChunks").exists(false),
+                                Criteria.where("writingChunks").is(new Document()))),
+                new Update().set("status", UploadStatus.COMMITTING).set("updatedAt", Instant.now()),
+                AttachmentUpload.class);
+        if (claimed == null) {
+            throw new IllegalStateException(getOwnUpload(uploaderId, uploadId).getStatus() == UploadStatus.UPLOADING
+                    ? "Chunks are still being written"
+                    : "Upload is already committed");
+        }
+
+        try {
+            return complete(claimed);
+        } catch (IOException | RuntimeException e) {
+            // Give the upload back to the client, it can fix chunks and commit again
+            try {
+                reopen(uploadId);
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Verify the file, store its message, move the file in place and mark the upload committed.
+     * The message is stored idempotently and recorded before the move, so a commit that failed
+     * partway can be retried, and one interrupted by a crash is finished by the sweep.
+     */
+    private ChatMessage complete(AttachmentUpload upload) throws IOException {
+        String uploadId = upload.getId();
+        Path part = fileStorageService.getAttachmentPartPath(uploadId);
+        String sha256 = hash(part);
+        if (upload.getSha256() != null && !upload.getSha256().equals(sha256)) {
+            throw new IllegalArgumentException("Checksum mismatch for the complete file");
+        }
+
+        ChatMessage message = chatMessageService.addAttachmentMessage(upload.getUploaderId(), upload.getReceiverId(),
+                AttachmentInfo.builder()
+                        .id(uploadId)
+                        .fileName(upload.getFileName())
+                        .contentType(upload.getContentType())
+                        .size(upload.getSize())
+                        .sha256(sha256)
+                        .build());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(uploadId)), new Update()
+                        .set("sha256", sha256)
+                        .set("messageId", message.getId()),
+                AttachmentUpload.class);
+
+        Files.move(part, fileStorageService.getAttachmentPath(uploadId), StandardCopyOption.ATOMIC_MOVE);
+        markCommitted(uploadId, message.getTimestamp());
+        return message;
+    }
+
+    private void markCommitted(String uploadId, Instant committedAt) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(uploadId)
+                        .and("status").is(UploadStatus.COMMITTING)),
+                new Update().set("status", UploadStatus.COMMITTED).set("updatedAt", committedAt),
+                AttachmentUpload.class);
+    }
+
+    /**
+     * Back from COMMITTING to UPLOADING, with the file back at its part path if it was moved
+     */
+    private void reopen(String uploadId) throws IOException {
+        Path part = fileStorageService.getAttachmentPartPath(uploadId);
+        Path committed = fileStorageService.getAttachmentPath(uploadId);
+        if (Files.exists(committed) && !Files.exists(part)) {
+            Files.move(committed, part, StandardCopyOption.ATOMIC_MOVE);
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(uploadId)
+                        .and("status").is(UploadStatus.COMMITTING)),
+                new Update().set("status", UploadStatus.UPLOADING).set("updatedAt", Instant.now()),
+                AttachmentUpload.class);
+    }
+
+    /**
+     * The stored file of a committed attachment, for its sender or receiver only
+     */
+    public Optional<Attachment> getContent(String userId, String uploadId) {
+        if (!ObjectId.isValid(uploadId)) {
+            return Optional.empty();
+        }
+        AttachmentUpload upload = mongoTemplate.findById(uploadId, AttachmentUpload.class);
+        if (upload == null || upload.getStatus() != UploadStatus.COMMITTED
+                || !(userId.equals(upload.getUploaderId()) || userId.equals(upload.getReceiverId()))) {
+            return Optional.empty();
+        }
+        FileMetadata file = new FileMetadata(fileStorageService.getAttachmentPath(uploadId),
+                upload.getContentType(), upload.getSize(), upload.getUpdatedAt().toEpochMilli(),
+                "\"" + upload.getSha256() + "\"");
+        return Optional.of(new Attachment(upload.getFileName(), file));
+    }
+
+    /**
+     * Drop uploads that were abandoned before commit, with their part files, and recover
+     * commits that were interrupted by a crash
+     */
+    @Scheduled(fixedDelayString = "${chat.attachments.sweep-interval-ms:3600000}")
+    public void sweepStaleUploads() {
+        recoverStaleCommits();
+
+        Instant cutoff = Instant.now().minusMillis(staleUploadMs);
+        List<AttachmentUpload> stale = mongoTemplate.find(Query.query(Criteria.where("status").is(UploadStatus.UPLOADING)
+                .and("updatedAt").lt(cutoff)).limit(1000), AttachmentUpload.class);
+        for (AttachmentUpload upload : stale) {
+            try {
+                long deleted = mongoTemplate.remove(Query.query(Criteria.where("_id").is(upload.getId())
+                        .and("status").is(UploadStatus.UPLOADING)
+                        .and("updatedAt").lt(cutoff)), AttachmentUpload.class).getDeletedCount();
+                if (deleted > 0) {
+                    Files.deleteIfExists(fileStorageService.getAttachmentPartPath(upload.getId()));
+                }
+            } catch (IOException | DataAccessException e) {
+                log.warn("Failed to remove stale upload {}", upload.getId(), e);
+            }
+        }
+        if (!stale.isEmpty()) {
+            log.info("Removed {} stale attachment uploads", stale.size());
+        }
+    }
+
+    /**
+     * A commit stuck in COMMITTING is finished if its message was stored, since the message
+     * may already have reached the receiver, and given back to the client otherwise
+     */
+    private void recoverStaleCommits() {
+        Instant cutoff = Instant.now().minusMillis(commitTimeoutMs);
+        List<AttachmentUpload> stuck = mongoTemplate.find(Query.query(Criteria.where("status").is(UploadStatus.COMMITTING)
+                .and("updatedAt").lt(cutoff)).limit(1000), AttachmentUpload.class);
+        for (AttachmentUpload upload : stuck) {
+            try {
+                if (upload.getMessageId() == null) {
+                    reopen(upload.getId());
+                    continue;
+                }
+                Path part = fileStorageService.getAttachmentPartPath(upload.getId());
+                if (Files.exists(part)) {
+                    Files.move(part, fileStorageService.getAttachmentPath(upload.getId()), StandardCopyOption.ATOMIC_MOVE);
+                }
+                markCommitted(upload.getId(), Instant.now());
+            } catch (IOException | DataAccessException e) {
+                log.warn("Failed to recover the commit of upload {}", upload.getId(), e);
+            }
+        }
+        if (!stuck.isEmpty()) {
+            log.info("Recovered {} interrupted attachment commits", stuck.size());
+        }
+    }
+
+    private AttachmentUpload getOwnUpload(String uploaderId, String uploadId) {
+        AttachmentUpload upload = ObjectId.isValid(uploadId)
+                ? mongoTemplate.findById(uploadId, AttachmentUpload.class)
+                : null;
+        // Other users' uploads are reported as missing, not as forbidden
+        if (upload == null || !upload.getUploaderId().equals(uploaderId)) {
+            throw new IllegalArgumentException("Upload not found: " + uploadId);
+        }
+        return upload;
+    }
+
+    /**
+     * Read a chunk into its staging file, checking its length and checksum
+     */
+    private static void stage(InputStream body, Path staged, int index, long expected, String checksum) throws IOException {
+        MessageDigest digest = sha256();
+        long received = 0;
+        try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.WRITE);
+             ReadableByteChannel in = Channels.newChannel(body)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (received + read > expected) {
+                    throw new IllegalArgumentException("Chunk " + index + " is larger than " + expected + " bytes");
+                }
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                received += read;
+                buffer.clear();
+            }
+        }
+        if (received != expected) {
+            throw new IllegalArgumentException("Chunk " + index + " must be " + expected + " bytes, got " + received);
+        }
+        if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(checksum)) {
+            throw new IllegalArgumentException("Checksum mismatch for chunk " + index);
+        }
+    }
+
+    /**
+     * Take the index for this writer, unless it is received, claimed by a live writer or the
+     * upload is no longer accepting chunks. Returns the claim time, null if not claimed.
+     */
+    private Instant claim(String uploadId, int index) {
+        // Mongo keeps milliseconds, the claim is matched by value later
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        String claim = "writingChunks." + index;
+        AttachmentUpload claimed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(uploadId)
+                        .and("status").is(UploadStatus.UPLOADING)
+                        .and("receivedChunks").ne(index)
+                        .orOperator(Criteria.where(claim).exists(false),
+                                Criteria.where(claim).lt(now.minusMillis(chunkClaimTimeoutMs)))),
+                new Update().set(claim, now),
+                AttachmentUpload.class);
+        return claimed != null ? now : null;
+    }
+
+    private static void copy(Path staged, Path part, long offset, long length) throws IOException {
+        // Positional writes, unlike transferFrom, may start past the end of the part file
+        try (FileChannel source = FileChannel.open(staged, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(part, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            long copied = 0;
+            while (copied < length) {
+                if (source.read(buffer) < 0) {
+                    throw new IOException("Staged chunk is shorter than " + length + " bytes");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    copied += target.write(buffer, offset + copied);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    private static String hash(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static AttachmentUploadDTO toDTO(AttachmentUpload upload) {
+        Set<Integer> received = upload.getReceivedChunks();
+        return AttachmentUploadDTO.builder()
+                .uploadId(upload.getId())
+                .status(upload.getStatus())
+                .size(upload.getSize())
+                .chunkSize(upload.getChunkSize())
+                .totalChunks(upload.getTotalChunks())
+                .missingChunks(IntStream.range(0, upload.getTotalChunks())
+                        .filter(index -> received == null || !received.contains(index))
+                        .boxed()
+                        .toList())
+                .messageId(upload.getMessageId())
+                .build();
+    }
+
+    public record Attachment(String fileName, FileMetadata file) {
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.ChatApp.Services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Square thumbnail variants of uploaded avatars, stored next to the original as
+ * {@code {stem}@{size}{ext}}. Each original is decoded once and all sizes are rendered
+ * from it on a small bounded pool, off the upload request.
+ */
+@Service
+@Slf4j
+public class AvatarThumbnailService {
+
+    @Value("${file.avatar.variant-sizes:48,96,256}")
+    private int[] variantSizes;
+
+    @Value("${file.avatar.thumbnail-threads:2}")
+    private int threads;
+
+    @Value("${file.avatar.thumbnail-queue-capacity:100}")
+    private int queueCapacity;
+
+    // A few KB of compressed data can declare a huge raster, so check the header before decoding
+    @Value("${file.avatar.max-pixels:40000000}")
+    private long maxPixels;
+
+    private ThreadPoolExecutor executor;
+
+    // Originals queued or already processed recently, so misses do not decode the same file repeatedly
+    private final Cache<Path, Boolean> attempted = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    @PostConstruct
+    public void init() {
+        variantSizes = Arrays.stream(variantSizes).sorted().distinct().toArray();
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "avatar-thumbnails-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue generation of all variants of an original. Returns immediately; if the pool
+     * is saturated the request is dropped and the original keeps being served.
+     */
+    public void submit(Path original) {
+        if (attempted.asMap().putIfAbsent(original, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(original));
+        } catch (RejectedExecutionException e) {
+            attempted.invalidate(original);
+            log.warn("Thumbnail queue full, skipping variants of {}", original.getFileName());
+        }
+    }
+
+    /**
+     * Smallest variant size that covers {@code requested} pixels, empty if the original is needed
+     */
+    public OptionalInt variantSize(int requested) {
+        return Arrays.stream(variantSizes).filter(size -> size >= requested).findFirst();
+    }
+
+    public int[] getVariantSizes() {
+        return variantSizes.clone();
+    }
+
+    public static String variantName(String filename, int size) {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0
+                ? filename + "@" + size
+                : filename.substring(0, dot) + "@" + size + filename.substring(dot);
+    }
+
+    private void generate(Path original) {
+        String filename = original.getFileName().toString();
+        int dot = filename.lastIndexOf('.');
+        String format = dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+        if (!ImageIO.getImageWritersBySuffix(format).hasNext()) {
+            log.debug("No image writer for {}, serving the original only", filename);
+            return;
+        }
+
+        try {
+            BufferedImage square = decodeSquare(original);
+            if (square == null) {
+                return;
+            }
+            boolean alpha = square.getColorModel().hasAlpha() && !format.equals("jpg") && !format.equals("jpeg");
+
+            // Largest first, each size is scaled down from the previous one
+            BufferedImage current = square;
+            for (int i = variantSizes.length - 1; i >= 0; i--) {
+                int size = variantSizes[i];
+                current = scale(current, size, alpha);
+                write(current, format, original.resolveSibling(variantName(filename, size)));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate thumbnails for {}", filename, e);
+        }
+    }
+
+    /**
+     * Decode the centre square of an original, subsampled while reading so the raster
+     * stays near the largest variant size. Null if it cannot be read or is too large.
+     */
+    private BufferedImage decodeSquare(Path original) throws IOException {
+        String filename = original.getFileName().toString();
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                log.warn("Could not decode avatar {}", filename);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    log.warn("Avatar {} is {}x{}, over the {} pixel limit, serving the original only",
+                            filename, width, height, maxPixels);
+                    return null;
+                }
+
+                int side = Math.min(width, height);
+                // Keep twice the largest size, so the bilinear steps still smooth what subsampling skipped
+                int step = Math.max(1, side / (variantSizes[variantSizes.length - 1] * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                return cropToSquare(image);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage cropToSquare(BufferedImage image) {
+        // Subsampling can leave the sides a pixel apart
+        int side = Math.min(image.getWidth(), image.getHeight());
+        return image.getSubimage((image.getWidth() - side) / 2, (image.getHeight() - side) / 2, side, side);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int size, boolean alpha) {
+        // Halve in steps for big reductions, a single bilinear pass would alias
+        BufferedImage current = image;
+        int side = current.getWidth();
+        do {
+            side = Math.max(size, side / 2);
+            current = draw(current, side, alpha);
+        } while (side > size);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage image, int side, boolean alpha) {
+        BufferedImage target = new BufferedImage(side, side,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, side, side, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        // Write then rename, a half-written variant must never be served
+        Path temp = Files.createTempFile(target.getParent(), ".thumb-", ".tmp");
+        try {
+            if (!ImageIO.write(image, format, temp.toFile())) {
+                throw new IOException("No writer for " + format);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -1,36 +1,332 @@
 package com.example.ChatApp.Services;
 
+import com.example.ChatApp.Models.AttachmentInfo;
 import com.example.ChatApp.Models.ChatMessage;
 import com.example.ChatApp.Models.DTOs.ChatMessageRequest;
+import com.example.ChatApp.Models.DTOs.MessagePageDTO;
+import com.example.ChatApp.Models.DTOs.ResyncPageDTO;
+import com.example.ChatApp.Models.DTOs.ResyncRequest;
+import com.example.ChatApp.Models.Enums.MessageType;
+import com.example.ChatApp.Models.MessageCursor;
 import com.example.ChatApp.Repositories.ChatMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ChatMessageService {
     private final ChatMessageRepository chatMessageRepository;
     private final ChatRoomService chatRoomService;
+    private final ChatMessageWriter chatMessageWriter;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessageTailCache messageTailCache;
+    private final ChatSequenceService chatSequenceService;
+    private final SendDeduplicator sendDeduplicator;
 
-    public ChatMessage addChatMessage(ChatMessageRequest request) {
+    private static final int EXPORT_BATCH_SIZE = 500;
+    private static final int MAX_CLIENT_MESSAGE_ID_LENGTH = 64;
+    private static final String ATTACHMENT_CLIENT_MESSAGE_ID_PREFIX = "attachment:";
+
+    @Value("${chat.resync.max-messages:200}")
+    private int resyncMaxMessages;
+
+    /**
+     * Store a chat message. A retry of a send that carries a client message id gets the
+     * message stored the first time, flagged as a duplicate, and nothing is stored again.
+     */
+    public AddedMessage addChatMessage(ChatMessageRequest request) {
+        String clientMessageId = request.getClientMessageId();
+        if (clientMessageId != null && (clientMessageId.isEmpty() || clientMessageId.length() > MAX_CLIENT_MESSAGE_ID_LENGTH)) {
+            throw new IllegalArgumentException("clientMessageId must be 1 to " + MAX_CLIENT_MESSAGE_ID_LENGTH + " characters");
+        }
         String chatRoomId = chatRoomService.getChatRoomId(
                 request.getSenderId(),
                 request.getReceiverId());
+        // Id, seq and timestamp are assigned here so the message can be delivered before it is persisted
         ChatMessage chatMessage = ChatMessage.builder()
+                .id(new ObjectId().toHexString())
                 .chatId(chatRoomId)
                 .senderId(request.getSenderId())
                 .receiverId(request.getReceiverId())
                 .content(request.getContent())
-                .timestamp(Instant.now())
+                .clientMessageId(clientMessageId)
+                .build();
+
+        if (clientMessageId == null) {
+            return new AddedMessage(store(chatMessage), false);
+        }
+        return storeOnce(chatMessage, false);
+    }
+
+    /**
+     * Create the ATTACHMENT message for a committed upload; the file name doubles as its text.
+     * Keyed by the upload id, so a commit retried after a failure gets the message stored the
+     * first time.
+     */
+    public ChatMessage addAttachmentMessage(String senderId, String receiverId, AttachmentInfo attachment) {
+        ChatMessage chatMessage = ChatMessage.builder()
+                .id(new ObjectId().toHexString())
+                .chatId(chatRoomService.getChatRoomId(senderId, receiverId))
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .content(attachment.getFileName())
+                .type(MessageType.ATTACHMENT)
+                .attachment(attachment)
+                .clientMessageId(ATTACHMENT_CLIENT_MESSAGE_ID_PREFIX + attachment.getId())
+                .build();
+        // Commits are rare, so a retry from beyond the window is looked up in the database too
+        return storeOnce(chatMessage, true).message();
+    }
+
+    /**
+     * Store a message unless one with the same sender and client message id was stored before
+     */
+    private AddedMessage storeOnce(ChatMessage chatMessage, boolean alwaysCheckStored) {
+        String chatRoomId = chatMessage.getChatId();
+        String senderId = chatMessage.getSenderId();
+        String clientMessageId = chatMessage.getClientMessageId();
+        ReentrantLock lock = sendDeduplicator.lockFor(senderId, clientMessageId);
+        lock.lock();
+        try {
+            ChatMessage original = sendDeduplicator.get(senderId, clientMessageId);
+            if (original == null && (alwaysCheckStored || !sendDeduplicator.isExact())) {
+                original = findByClientMessageId(chatRoomId, senderId, clientMessageId).orElse(null);
+            }
+            if (original != null) {
+                return new AddedMessage(original, true);
+            }
+
+            try {
+                store(chatMessage);
+            } catch (DuplicateKeyException e) {
+                // Saved synchronously and the unique index caught a retry from beyond the window
+                return findByClientMessageId(chatRoomId, senderId, clientMessageId)
+                        .map(stored -> new AddedMessage(stored, true))
+                        .orElseThrow(() -> e);
+            }
+            // Only now that seq and timestamp are set may a retry see it
+            sendDeduplicator.put(senderId, clientMessageId, chatMessage);
+            return new AddedMessage(chatMessage, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ChatMessage store(ChatMessage chatMessage) {
+        // Queued and cached in seq order, so a resync never skips a message that is still in flight
+        chatSequenceService.next(chatMessage.getChatId(), seq -> {
+            chatMessage.setSeq(seq);
+            chatMessage.setTimestamp(Instant.now());
+            chatMessageWriter.write(chatMessage);
+            messageTailCache.append(chatMessage);
+        });
+        return chatMessage;
+    }
+
+    private Optional<ChatMessage> findByClientMessageId(String chatId, String senderId, String clientMessageId) {
+        Optional<ChatMessage> pending = chatMessageWriter.pending(chatId).stream()
+                .filter(message -> senderId.equals(message.getSenderId())
+                        && clientMessageId.equals(message.getClientMessageId()))
+                .findFirst();
+        if (pending.isPresent()) {
+            return pending;
+        }
+        return Optional.ofNullable(mongoTemplate.findOne(Query.query(Criteria.where("senderId").is(senderId)
+                .and("clientMessageId").is(clientMessageId)), ChatMessage.class));
+    }
+
+    /**
+     * Messages of a conversation after a sequence number, oldest first, for a client that
+     * reconnects. Served from the tail cache when it reaches back far enough.
+     */
+    public ResyncPageDTO resync(String userId, ResyncRequest request) {
+        if (request.getOtherUserId() == null) {
+            throw new IllegalArgumentException("otherUserId is required");
+        }
+        String chatRoomId = chatRoomService.getChatRoomId(userId, request.getOtherUserId());
+        long afterSeq = Math.max(0, request.getAfterSeq());
+
+        Optional<MessageTailCache.CachedPage> cached = messageTailCache.after(chatRoomId, afterSeq, resyncMaxMessages);
+        if (cached.isPresent()) {
+            return ResyncPageDTO.builder()
+                    .chatId(chatRoomId)
+                    .messages(cached.get().messages())
+                    .hasMore(cached.get().hasMore())
+                    .build();
+        }
+
+        // Read pending messages before querying, see ChatMessageWriter#pending
+        List<ChatMessage> pending = chatMessageWriter.pending(chatRoomId);
+        Query query = Query.query(Criteria.where("chatId").is(chatRoomId).and("seq").gt(afterSeq))
+                .with(Sort.by(Sort.Direction.ASC, "seq"))
+                .limit(resyncMaxMessages + 1);
+        List<ChatMessage> messages = new ArrayList<>(mongoTemplate.find(query, ChatMessage.class));
+
+        if (!pending.isEmpty()) {
+            Set<String> storedIds = new HashSet<>();
+            messages.forEach(message -> storedIds.add(message.getId()));
+            pending.stream()
+                    .filter(message -> !storedIds.contains(message.getId()))
+                    .filter(message -> message.getSeq() != null && message.getSeq() > afterSeq)
+                    .forEach(messages::add);
+            messages.sort(Comparator.comparing(ChatMessage::getSeq));
+        }
+
+        boolean hasMore = messages.size() > resyncMaxMessages;
+        return ResyncPageDTO.builder()
+                .chatId(chatRoomId)
+                .messages(new ArrayList<>(messages.subList(0, Math.min(resyncMaxMessages, messages.size()))))
+                .hasMore(hasMore)
                 .build();
-        return chatMessageRepository.save(chatMessage);
     }
 
     public List<ChatMessage> getChatMessagesBySenderAndReceiver(String senderId, String receiverId) {
         String chatRoomId = chatRoomService.getChatRoomId(senderId, receiverId);
-        return chatMessageRepository.findByChatIdOrderByTimestampAsc(chatRoomId);
+        List<ChatMessage> pending = chatMessageWriter.pending(chatRoomId);
+        List<ChatMessage> messages = chatMessageRepository.findByChatIdOrderByTimestampAsc(chatRoomId);
+        if (pending.isEmpty()) {
+            return messages;
+        }
+
+        // Merge messages still waiting in the write-behind queue
+        Set<String> storedIds = new HashSet<>();
+        messages.forEach(message -> storedIds.add(message.getId()));
+        List<ChatMessage> merged = new ArrayList<>(messages);
+        pending.stream()
+                .filter(message -> !storedIds.contains(message.getId()))
+                .forEach(merged::add);
+        merged.sort(Comparator.comparing(ChatMessage::getTimestamp));
+        return merged;
+    }
+
+    /**
+     * One page of a conversation, newest message first.
+     * Without a cursor the latest page is returned; {@code before} pages back in history
+     * and {@code after} returns messages newer than the cursor.
+     */
+    public MessagePageDTO getChatMessagePage(String senderId, String receiverId,
+                                             String before, String after, int size) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of before and after can be set");
+        }
+        String chatRoomId = chatRoomService.getChatRoomId(senderId, receiverId);
+        boolean forward = after != null;
+        MessageCursor cursor = forward ? MessageCursor.decode(after)
+                : before != null ? MessageCursor.decode(before) : null;
+
+        // The latest page of an active room is served from memory
+        if (cursor == null) {
+            Optional<MessageTailCache.CachedPage> cached = messageTailCache.latest(chatRoomId, size);
+            if (cached.isPresent()) {
+                List<ChatMessage> page = cached.get().messages();
+                boolean hasMore = cached.get().hasMore();
+                return MessagePageDTO.builder()
+                        .messages(page)
+                        .nextCursor(hasMore && !page.isEmpty() ? MessageCursor.of(page.get(page.size() - 1)).encode() : null)
+                        .hasMore(hasMore)
+                        .build();
+            }
+        }
+
+        // Read pending messages before querying, see ChatMessageWriter#pending
+        List<ChatMessage> pending = chatMessageWriter.pending(chatRoomId);
+
+        Criteria criteria = Criteria.where("chatId").is(chatRoomId);
+        if (cursor != null) {
+            Object cursorId = ObjectId.isValid(cursor.messageId())
+                    ? new ObjectId(cursor.messageId())
+                    : cursor.messageId();
+            criteria = forward
+                    ? criteria.orOperator(
+                            Criteria.where("timestamp").gt(cursor.timestamp()),
+                            Criteria.where("timestamp").is(cursor.timestamp()).and("_id").gt(cursorId))
+                    : criteria.orOperator(
+                            Criteria.where("timestamp").lt(cursor.timestamp()),
+                            Criteria.where("timestamp").is(cursor.timestamp()).and("_id").lt(cursorId));
+        }
+        Sort.Direction direction = forward ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Query query = Query.query(criteria)
+                .with(Sort.by(direction, "timestamp").and(Sort.by(direction, "_id")))
+                .limit(size + 1);
+        List<ChatMessage> messages = new ArrayList<>(mongoTemplate.find(query, ChatMessage.class));
+
+        if (!pending.isEmpty()) {
+            Set<String> storedIds = new HashSet<>();
+            messages.forEach(message -> storedIds.add(message.getId()));
+            pending.stream()
+                    .filter(message -> !storedIds.contains(message.getId()))
+                    .filter(message -> cursor == null || (forward
+                            ? MessageCursor.of(message).compareTo(cursor) > 0
+                            : MessageCursor.of(message).compareTo(cursor) < 0))
+                    .forEach(messages::add);
+            Comparator<ChatMessage> order = Comparator.comparing(MessageCursor::of);
+            messages.sort(forward ? order : order.reversed());
+        }
+
+        boolean hasMore = messages.size() > size;
+        List<ChatMessage> page = new ArrayList<>(messages.subList(0, Math.min(size, messages.size())));
+        if (cursor == null) {
+            messageTailCache.prime(chatRoomId, page, !hasMore);
+        }
+        String nextCursor = hasMore ? MessageCursor.of(page.get(page.size() - 1)).encode() : null;
+        if (forward) {
+            Collections.reverse(page);
+        }
+
+        return MessagePageDTO.builder()
+                .messages(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Write the whole conversation as newline-delimited JSON, oldest message first.
+     * Messages are read through a Mongo cursor and written one by one, so memory use
+     * does not depend on the conversation size and a slow client slows down the cursor.
+     */
+    public void exportChatMessages(String senderId, String receiverId, OutputStream out) throws IOException {
+        String chatRoomId = chatRoomService.getChatRoomId(senderId, receiverId);
+        Query query = Query.query(Criteria.where("chatId").is(chatRoomId))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp").and(Sort.by(Sort.Direction.ASC, "_id")))
+                .cursorBatchSize(EXPORT_BATCH_SIZE);
+        ObjectWriter writer = objectMapper.writerFor(ChatMessage.class);
+
+        try (Stream<ChatMessage> messages = mongoTemplate.stream(query, ChatMessage.class)) {
+            for (ChatMessage message : (Iterable<ChatMessage>) messages::iterator) {
+                out.write(writer.writeValueAsBytes(message));
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @param duplicate the send was a retry and {@code message} was stored by an earlier one
+     */
+    public record AddedMessage(ChatMessage message, boolean duplicate) {
     }
 }
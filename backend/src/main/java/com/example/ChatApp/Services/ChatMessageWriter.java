@@ -0,0 +1,274 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for chat messages.
+ * Messages are queued and group-committed with a single bulk insert per batch
+ * (plus one bulk update of the conversation summaries), so the STOMP send path
+ * never waits on a Mongo round trip. A message that cannot be stored is retried with
+ * exponential backoff and stays visible to reads until it is.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatMessageWriter {
+    private final MongoTemplate mongoTemplate;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageTailCache messageTailCache;
+    private final MessageDeliveryService messageDeliveryService;
+
+    @Value("${chat.write-behind.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Value("${chat.write-behind.max-retry-delay-ms:30000}")
+    private long maxRetryDelayMs;
+
+    private BlockingQueue<ChatMessage> queue;
+
+    // Messages that could not be stored, retried with exponential backoff; they stay tracked meanwhile
+    private final ConcurrentLinkedQueue<ChatMessage> retries = new ConcurrentLinkedQueue<>();
+    private long retryDelayMs;
+    private long retryAt;
+
+    // Messages accepted but not yet committed, by chatId, so reads can see their own writes
+    private final ConcurrentHashMap<String, List<ChatMessage>> unflushed = new ConcurrentHashMap<>();
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        // Before the first message is recorded, the backfill must not see messages recorded meanwhile
+        try {
+            conversationSummaryService.backfill();
+        } catch (DataAccessException e) {
+            log.error("Failed to backfill conversation summaries", e);
+        }
+
+        if (!enabled) {
+            log.info("Chat message write-behind disabled, messages are saved synchronously");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = new Thread(this::runFlusher, "chat-message-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.join(shutdownTimeoutMs);
+
+        // Flusher did not finish in time or was interrupted, commit whatever is left from this thread
+        List<ChatMessage> remaining = new ArrayList<>();
+        drainRetries(remaining, Integer.MAX_VALUE);
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.warn("Flushing {} queued chat messages on shutdown", remaining.size());
+            flush(remaining);
+        }
+        if (!retries.isEmpty()) {
+            log.error("{} chat messages could not be stored before shutdown and are lost", retries.size());
+        }
+    }
+
+    /**
+     * Persist a message. The message must already carry its id and timestamp.
+     * When write-behind is enabled this only enqueues it; if the queue is full
+     * the caller falls back to a synchronous insert, which throttles the sender.
+     */
+    public void write(ChatMessage chatMessage) {
+        if (!running) {
+            mongoTemplate.insert(chatMessage);
+            conversationSummaryService.recordMessages(List.of(chatMessage));
+            return;
+        }
+
+        track(chatMessage);
+        if (!queue.offer(chatMessage)) {
+            log.warn("Chat message write-behind queue is full, saving synchronously");
+            try {
+                mongoTemplate.insert(chatMessage);
+                conversationSummaryService.recordMessages(List.of(chatMessage));
+            } finally {
+                untrack(chatMessage);
+            }
+        }
+    }
+
+    /**
+     * Messages of a chat room that are accepted but not yet committed.
+     * Read this before querying Mongo: anything missing here was committed first.
+     */
+    public List<ChatMessage> pending(String chatId) {
+        List<ChatMessage> messages = unflushed.get(chatId);
+        return messages == null ? Collections.emptyList() : List.copyOf(messages);
+    }
+
+    private void runFlusher() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                // Messages that failed before go first once their backoff is over
+                long retryIn = retryAt - System.currentTimeMillis();
+                if (!retries.isEmpty() && (retryIn <= 0 || !running)) {
+                    drainRetries(batch, batchSize);
+                } else {
+                    long timeout = retries.isEmpty() ? flushIntervalMs : Math.min(flushIntervalMs, retryIn);
+                    ChatMessage first = queue.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+
+                // Group-commit: keep collecting until the batch is full or the interval elapsed
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    ChatMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Leave the batch being collected and the queue to stop(), which flushes from its own thread
+                retries.addAll(batch);
+                running = false;
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in chat message writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<ChatMessage> batch) {
+        List<ChatMessage> persisted = batch;
+        Set<ChatMessage> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            mongoTemplate.insert(batch, ChatMessage.class);
+        } catch (DataAccessException e) {
+            // Part of the batch may already be stored, save is an upsert by id so retrying is safe
+            log.error("Bulk insert of {} chat messages failed, retrying one by one", batch.size(), e);
+            persisted = new ArrayList<>(batch.size());
+            for (ChatMessage chatMessage : batch) {
+                try {
+                    mongoTemplate.save(chatMessage);
+                    persisted.add(chatMessage);
+                } catch (DuplicateKeyException ex) {
+                    // A retried send that got past the dedup window, the first copy is stored
+                    log.info("Skipped duplicate chat message {} from {}", chatMessage.getClientMessageId(), chatMessage.getSenderId());
+                    discardDuplicate(chatMessage);
+                } catch (DataAccessException ex) {
+                    log.error("Failed to save chat message {}, will retry", chatMessage.getId(), ex);
+                    failed.add(chatMessage);
+                }
+            }
+        }
+        try {
+            // Summaries only count what was stored
+            conversationSummaryService.recordMessages(persisted);
+        } finally {
+            // Messages that were not stored stay visible to reads until a retry stores them
+            for (ChatMessage chatMessage : batch) {
+                if (!failed.contains(chatMessage)) {
+                    untrack(chatMessage);
+                }
+            }
+            scheduleRetry(failed);
+        }
+    }
+
+    private void scheduleRetry(Collection<ChatMessage> failed) {
+        if (failed.isEmpty()) {
+            retryDelayMs = 0;
+            return;
+        }
+        retryDelayMs = retryDelayMs == 0 ? flushIntervalMs : Math.min(retryDelayMs * 2, maxRetryDelayMs);
+        retryAt = System.currentTimeMillis() + retryDelayMs;
+        retries.addAll(failed);
+    }
+
+    private void drainRetries(List<ChatMessage> batch, int max) {
+        ChatMessage chatMessage;
+        while (batch.size() < max && (chatMessage = retries.poll()) != null) {
+            batch.add(chatMessage);
+        }
+    }
+
+    /**
+     * The copy was already cached and queued for delivery when it was accepted; take it back
+     * out of both. Its seq stays unused, and the push to an online receiver cannot be recalled.
+     */
+    private void discardDuplicate(ChatMessage chatMessage) {
+        messageTailCache.evict(chatMessage.getChatId());
+        messageDeliveryService.retract(chatMessage);
+    }
+
+    private void track(ChatMessage chatMessage) {
+        unflushed.compute(chatMessage.getChatId(), (chatId, messages) -> {
+            List<ChatMessage> list = messages == null ? new CopyOnWriteArrayList<>() : messages;
+            list.add(chatMessage);
+            return list;
+        });
+    }
+
+    private void untrack(ChatMessage chatMessage) {
+        unflushed.computeIfPresent(chatMessage.getChatId(), (chatId, messages) -> {
+            messages.remove(chatMessage);
+            return messages.isEmpty() ? null : messages;
+        });
+    }
+}
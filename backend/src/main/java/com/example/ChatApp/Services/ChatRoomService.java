@@ -2,39 +2,74 @@ package com.example.ChatApp.Services;
 
 import com.example.ChatApp.Models.ChatRoom;
 import com.example.ChatApp.Repositories.ChatRoomRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class ChatRoomService {
     private final ChatRoomRepository chatRoomRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${chat.room-cache.max-size:100000}")
+    private long roomCacheMaxSize;
+
+    // Deterministic pair id -> actual room id (differs only for rooms created before deterministic ids)
+    private Cache<String, String> roomIds;
+
+    @PostConstruct
+    public void init() {
+        roomIds = Caffeine.newBuilder()
+                .maximumSize(roomCacheMaxSize)
+                .build();
+    }
+
+    /**
+     * Deterministic room id for a pair of users, independent of who sends first
+     */
+    public static String chatRoomIdFor(String firstUserId, String secondUserId) {
+        return firstUserId.compareTo(secondUserId) < 0
+                ? firstUserId + "_" + secondUserId
+                : secondUserId + "_" + firstUserId;
+    }
 
     public String getChatRoomId(String senderId, String receiverId){
-        Optional<ChatRoom> firstSearch = chatRoomRepository.findByFirstUserIdAndSecondUserId(senderId, receiverId);
-        if (firstSearch.isEmpty()) {
-            Optional<ChatRoom> secondSearch = chatRoomRepository.findByFirstUserIdAndSecondUserId(receiverId, senderId);
-            if (secondSearch.isEmpty()) {
-                ChatRoom chatRoom = ChatRoom.builder()
-                        .firstUserId(senderId)
-                        .secondUserId(receiverId)
-                        .build();
-                return chatRoomRepository.save(chatRoom).getId();
-            }
-            else {
-                ChatRoom chatRoom = secondSearch.get();
-                return chatRoom.getId();
-            }
-        } else {
-            ChatRoom chatRoom = firstSearch.get();
-            return chatRoom.getId();
-        }
+        return roomIds.get(chatRoomIdFor(senderId, receiverId),
+                roomId -> resolveChatRoomId(senderId, receiverId, roomId));
     }
 
     public List<ChatRoom> getChatRoomByUserId(String userId) {
         return chatRoomRepository.findByFirstUserIdOrSecondUserId(userId, userId);
     }
+
+    private String resolveChatRoomId(String senderId, String receiverId, String roomId) {
+        // Rooms created before deterministic ids keep their original id
+        List<ChatRoom> existing = chatRoomRepository.findByUserPair(senderId, receiverId);
+        if (!existing.isEmpty()) {
+            return existing.get(0).getId();
+        }
+
+        boolean senderFirst = senderId.compareTo(receiverId) < 0;
+        Query query = Query.query(Criteria.where("_id").is(roomId));
+        Update update = new Update()
+                .setOnInsert("firstUserId", senderFirst ? senderId : receiverId)
+                .setOnInsert("secondUserId", senderFirst ? receiverId : senderId);
+        try {
+            mongoTemplate.upsert(query, update, ChatRoom.class);
+        } catch (DuplicateKeyException e) {
+            // Concurrent first contact from the other side, the room exists now
+        }
+        return roomId;
+    }
 }
@@ -0,0 +1,89 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatSequence;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Per-chat message sequence numbers.
+ * Numbers are reserved from the chat_sequences counter in blocks, so only one message in
+ * {@code block-size} costs a Mongo round trip; the rest are handed out from memory under
+ * a lock striped by chat id. Numbers increase strictly within a chat but are not dense:
+ * what is left of a block is skipped after a restart or when an idle chat's block is evicted.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatSequenceService {
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${chat.sequence.block-size:50}")
+    private int blockSize;
+
+    @Value("${chat.sequence.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    // Only read and written under the chat's lock
+    private Cache<String, Block> blocks;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        blocks = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+    }
+
+    /**
+     * Take the next sequence number of a chat and run {@code action} with it while still
+     * holding the chat's lock, so whatever the action publishes appears in sequence order.
+     */
+    public void next(String chatId, LongConsumer action) {
+        ReentrantLock lock = locks[Math.floorMod(chatId.hashCode(), locks.length)];
+        lock.lock();
+        try {
+            Block block = blocks.getIfPresent(chatId);
+            if (block == null || block.next > block.last) {
+                block = reserve(chatId);
+                blocks.put(chatId, block);
+            }
+            action.accept(block.next++);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Block reserve(String chatId) {
+        ChatSequence sequence = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(chatId)),
+                new Update().inc("value", blockSize),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                ChatSequence.class);
+        Block block = new Block();
+        block.last = sequence.getValue();
+        block.next = block.last - blockSize + 1;
+        return block;
+    }
+
+    private static final class Block {
+        long next;
+        long last;
+    }
+}
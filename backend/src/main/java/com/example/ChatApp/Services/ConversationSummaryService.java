@@ -0,0 +1,190 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.ConversationSummary;
+import com.example.ChatApp.Models.MessageCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Maintains the conversation_summaries collection: one document per (user, room)
+ * with the last message preview and counters, so the sidebar is a single indexed query.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummaryService {
+    private final MongoTemplate mongoTemplate;
+
+    private static final int PREVIEW_LENGTH = 100;
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    // Marks the backfill as done, so an interrupted one runs again on the next start
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String BACKFILL_MIGRATION = "conversation_summaries_backfill";
+
+    /**
+     * Apply a batch of new messages to the summaries of both participants
+     */
+    public void recordMessages(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        // Collapse the batch to one latest message and a count per room, and unread messages per receiver
+        Map<String, ChatMessage> latestByRoom = new LinkedHashMap<>();
+        Map<String, Long> countByRoom = new LinkedHashMap<>();
+        Map<String, List<Instant>> unreadBySummary = new HashMap<>();
+        Comparator<ChatMessage> order = Comparator.comparing(MessageCursor::of);
+        for (ChatMessage message : messages) {
+            latestByRoom.merge(message.getChatId(), message, (a, b) -> order.compare(a, b) >= 0 ? a : b);
+            countByRoom.merge(message.getChatId(), 1L, Long::sum);
+            unreadBySummary.computeIfAbsent(ConversationSummary.idFor(message.getReceiverId(), message.getChatId()),
+                    id -> new ArrayList<>()).add(message.getTimestamp());
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationSummary.class);
+        latestByRoom.forEach((roomId, last) -> {
+            long count = countByRoom.get(roomId);
+            addSummaryUpdates(bulk, last.getSenderId(), last.getReceiverId(), last, count, false,
+                    unreadBySummary.getOrDefault(ConversationSummary.idFor(last.getSenderId(), roomId), List.of()));
+            addSummaryUpdates(bulk, last.getReceiverId(), last.getSenderId(), last, count, false,
+                    unreadBySummary.getOrDefault(ConversationSummary.idFor(last.getReceiverId(), roomId), List.of()));
+        });
+        try {
+            bulk.execute();
+        } catch (DataAccessException e) {
+            log.error("Failed to update conversation summaries for {} rooms", latestByRoom.size(), e);
+        }
+    }
+
+    /**
+     * Build summaries from existing messages, once, e.g. right after this collection was
+     * introduced. Called by ChatMessageWriter before it records any message. Message counts
+     * are set rather than incremented, so a backfill that failed partway, and the messages
+     * recorded after it, are counted exactly once when it runs again on the next start.
+     */
+    public void backfill() {
+        Query marker = Query.query(Criteria.where("_id").is(BACKFILL_MIGRATION));
+        if (mongoTemplate.exists(marker, MIGRATIONS_COLLECTION)) {
+            return;
+        }
+        if (mongoTemplate.estimatedCount(ChatMessage.class) == 0) {
+            markBackfilled();
+            return;
+        }
+        log.info("Building conversation summaries from existing messages...");
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                        Aggregation.sort(Sort.by(Sort.Direction.ASC, "chatId").and(Sort.by(Sort.Direction.DESC, "timestamp"))),
+                        Aggregation.group("chatId")
+                                .first("senderId").as("senderId")
+                                .first("receiverId").as("receiverId")
+                                .first("content").as("content")
+                                .first("timestamp").as("timestamp")
+                                .count().as("count"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        int rooms = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationSummary.class);
+        try (Stream<Document> results = mongoTemplate.aggregateStream(aggregation, "chat_messages", Document.class)) {
+            for (Document room : (Iterable<Document>) results::iterator) {
+                ChatMessage last = ChatMessage.builder()
+                        .chatId(room.getString("_id"))
+                        .senderId(room.getString("senderId"))
+                        .receiverId(room.getString("receiverId"))
+                        .content(room.getString("content"))
+                        .timestamp(room.getDate("timestamp").toInstant())
+                        .build();
+                long count = ((Number) room.get("count")).longValue();
+                addSummaryUpdates(bulk, last.getSenderId(), last.getReceiverId(), last, count, true, List.of());
+                addSummaryUpdates(bulk, last.getReceiverId(), last.getSenderId(), last, count, true, List.of());
+
+                if (++rooms % BACKFILL_BATCH_SIZE == 0) {
+                    bulk.execute();
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ConversationSummary.class);
+                }
+            }
+        }
+        if (rooms % BACKFILL_BATCH_SIZE != 0) {
+            bulk.execute();
+        }
+        markBackfilled();
+        log.info("Built conversation summaries for {} rooms", rooms);
+    }
+
+    private void markBackfilled() {
+        mongoTemplate.save(new Document("_id", BACKFILL_MIGRATION).append("completedAt", new Date()),
+                MIGRATIONS_COLLECTION);
+    }
+
+    private void addSummaryUpdates(BulkOperations bulk, String userId, String otherUserId,
+                                   ChatMessage last, long count, boolean setCount, List<Instant> unread) {
+        String id = ConversationSummary.idFor(userId, last.getChatId());
+
+        // Create the summary if needed and bump counters
+        Update upsert = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("roomId", last.getChatId())
+                .setOnInsert("otherUserId", otherUserId)
+                .setOnInsert("unreadCount", 0L);
+        bulk.upsert(Query.query(Criteria.where("_id").is(id)),
+                setCount ? upsert.set("messageCount", count) : upsert.inc("messageCount", count));
+
+        // One update per summary adds the messages newer than the user's read watermark: a message
+        // the user already read past is not unread, even if its batch lands after the receipt
+        if (!unread.isEmpty()) {
+            bulk.updateOne(Query.query(Criteria.where("_id").is(id)), addUnread(unread));
+        }
+
+        // Only move the preview forward, a late batch must not overwrite a newer message
+        Date lastMessageTime = Date.from(last.getTimestamp());
+        bulk.updateOne(Query.query(Criteria.where("_id").is(id).orOperator(
+                        Criteria.where("lastMessageTime").lt(lastMessageTime),
+                        Criteria.where("lastMessageTime").exists(false))),
+                new Update()
+                        .set("lastMessage", preview(last.getContent()))
+                        .set("lastMessageTime", lastMessageTime)
+                        .set("lastMessageSenderId", last.getSenderId()));
+    }
+
+    private static AggregationUpdate addUnread(List<Instant> timestamps) {
+        List<Date> dates = timestamps.stream().map(Date::from).toList();
+        // A missing lastReadAt sorts below every date, so then all of them count
+        Document newerThanRead = new Document("$filter", new Document("input", dates)
+                .append("as", "t")
+                .append("cond", new Document("$gt", List.of("$$t", "$lastReadAt"))));
+        Document set = new Document("$set", new Document("unreadCount",
+                new Document("$add", List.of("$unreadCount", new Document("$size", newerThanRead)))));
+        return AggregationUpdate.from(List.of(context -> set));
+    }
+
+    private static String preview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, PREVIEW_LENGTH);
+    }
+}
@@ -1,6 +1,19 @@
 package com.example.ChatApp.Services;
 
+import com.example.ChatApp.Models.AvatarBlob;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -10,10 +23,36 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Stores uploaded files. Avatars are content-addressed: the file name is the SHA-256 of
+ * the image and files are sharded by hash prefix ({@code avatars/ab/cd/abcd...ext}).
+ * Identical uploads share one file, reference counted in the avatar_blobs collection.
+ * Files from before content addressing live flat in {@code avatars/} and keep being served.
+ */
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class FileStorageService {
+    private final AvatarThumbnailService avatarThumbnailService;
+    private final MongoTemplate mongoTemplate;
+
+    // Hash, optional thumbnail size suffix, optional extension
+    private static final Pattern BLOB_NAME = Pattern.compile("([0-9a-f]{64})(@\\d+)?(\\.[a-z0-9]{1,10})?");
+    private static final Pattern EXTENSION = Pattern.compile("\\.[a-z0-9]{1,10}");
 
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
@@ -21,14 +60,37 @@ public class FileStorageService {
     @Value("${server.base-url:http://localhost:8080}")
     private String serverBaseUrl;
 
+    @Value("${file.metadata-cache.max-size:10000}")
+    private long metadataCacheMaxSize;
+
+    @Value("${file.avatar.orphan-grace-ms:86400000}")
+    private long orphanGraceMs;
+
     private Path uploadPath;
+    private Path avatarsPath;
+    private Path attachmentsPath;
+
+    // Serializes store and sweep of the same blob, see storeAvatar and sweepOrphanAvatars
+    private final ReentrantLock[] blobLocks = new ReentrantLock[64];
+
+    // Stored files never change in place, so metadata stays valid until the file is deleted
+    private Cache<Path, FileMetadata> metadataCache;
 
     @PostConstruct
     public void init() {
         uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
+        avatarsPath = uploadPath.resolve("avatars");
+        attachmentsPath = uploadPath.resolve("attachments");
+        for (int i = 0; i < blobLocks.length; i++) {
+            blobLocks[i] = new ReentrantLock();
+        }
+        metadataCache = Caffeine.newBuilder()
+                .maximumSize(metadataCacheMaxSize)
+                .build();
         try {
             Files.createDirectories(uploadPath);
-            Files.createDirectories(uploadPath.resolve("avatars"));
+            Files.createDirectories(avatarsPath);
+            Files.createDirectories(attachmentsPath);
         } catch (IOException e) {
             throw new RuntimeException("Could not create upload directory", e);
         }
@@ -53,37 +115,125 @@ public class FileStorageService {
             throw new IllegalArgumentException("File size must be less than 5MB");
         }
 
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        }
-        String filename = userId + "_" + UUID.randomUUID().toString().substring(0, 8) + extension;
+        String extension = extensionOf(file.getOriginalFilename());
+
+        // Hashed while it is copied into a temp file; kept only if the content is not stored yet
+        Files.createDirectories(avatarsPath);
+        Path temp = Files.createTempFile(avatarsPath, ".upload-", ".tmp");
+        try {
+            String hash;
+            try (DigestInputStream in = new DigestInputStream(file.getInputStream(), sha256())) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                hash = HexFormat.of().formatHex(in.getMessageDigest().digest());
+            }
+
+            ReentrantLock lock = lockFor(hash);
+            lock.lock();
+            try {
+                AvatarBlob blob = mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(hash)),
+                        new Update()
+                                .setOnInsert("extension", extension)
+                                .setOnInsert("size", file.getSize())
+                                .setOnInsert("createdAt", Instant.now())
+                                .inc("refCount", 1)
+                                .set("updatedAt", Instant.now()),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        AvatarBlob.class);
+                String filename = hash + blob.getExtension();
+                Path avatarPath = blobPath(filename);
 
-        // Store file
-        Path avatarPath = uploadPath.resolve("avatars").resolve(filename);
-        Files.copy(file.getInputStream(), avatarPath, StandardCopyOption.REPLACE_EXISTING);
+                if (!Files.exists(avatarPath)) {
+                    try {
+                        // Rename into the shard, a partial file must never be served
+                        Files.createDirectories(avatarPath.getParent());
+                        Files.move(temp, avatarPath, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException | RuntimeException e) {
+                        // Give the reference back, or the blob would never be swept
+                        release(hash);
+                        throw e;
+                    }
 
-        // Return URL
-        return serverBaseUrl + "/api/files/avatars/" + filename;
+                    // Size variants are rendered in the background, the original is served until they exist
+                    avatarThumbnailService.submit(avatarPath);
+                }
+
+                return serverBaseUrl + "/api/files/avatars/" + filename;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
     /**
-     * Delete an avatar file
+     * Release an avatar. Shared files are only dropped by the orphan sweep once unreferenced.
      */
     public void deleteAvatar(String avatarUrl) {
         if (avatarUrl == null || avatarUrl.isEmpty()) {
             return;
         }
 
+        String filename = avatarUrl.substring(avatarUrl.lastIndexOf("/") + 1);
+        Matcher blobName = BLOB_NAME.matcher(filename);
+        if (blobName.matches()) {
+            try {
+                release(blobName.group(1));
+            } catch (DataAccessException e) {
+                log.error("Failed to release avatar {}", filename, e);
+            }
+            return;
+        }
+
+        // Legacy per-user file, not shared
         try {
-            String filename = avatarUrl.substring(avatarUrl.lastIndexOf("/") + 1);
-            Path avatarPath = uploadPath.resolve("avatars").resolve(filename);
-            Files.deleteIfExists(avatarPath);
+            Path avatarPath = avatarsPath.resolve(filename).normalize();
+            if (avatarPath.getParent().equals(avatarsPath)) {
+                deleteWithVariants(avatarPath);
+            }
         } catch (IOException e) {
             // Log error but don't throw - deletion failure shouldn't break the flow
-            System.err.println("Failed to delete avatar file: " + e.getMessage());
+            log.warn("Failed to delete avatar file {}: {}", filename, e.getMessage());
+        }
+    }
+
+    private void release(String hash) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(hash)),
+                new Update().inc("refCount", -1).set("updatedAt", Instant.now()),
+                AvatarBlob.class);
+    }
+
+    /**
+     * Remove avatar files no user has referenced for the grace period.
+     * The grace period keeps the file around for an undo or an in-flight re-upload.
+     */
+    @Scheduled(fixedDelayString = "${file.avatar.sweep-interval-ms:600000}")
+    public void sweepOrphanAvatars() {
+        Instant cutoff = Instant.now().minusMillis(orphanGraceMs);
+        List<AvatarBlob> orphans = mongoTemplate.find(Query.query(Criteria.where("refCount").lte(0)
+                .and("updatedAt").lt(cutoff)).limit(1000), AvatarBlob.class);
+
+        int removed = 0;
+        for (AvatarBlob orphan : orphans) {
+            ReentrantLock lock = lockFor(orphan.getId());
+            lock.lock();
+            try {
+                // Still unreferenced? A concurrent upload may have claimed it back
+                long deleted = mongoTemplate.remove(Query.query(Criteria.where("_id").is(orphan.getId())
+                        .and("refCount").lte(0)), AvatarBlob.class).getDeletedCount();
+                if (deleted > 0) {
+                    deleteWithVariants(blobPath(orphan.getId() + orphan.getExtension()));
+                    removed++;
+                }
+            } catch (IOException | DataAccessException e) {
+                log.warn("Failed to remove orphan avatar {}", orphan.getId(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} orphan avatars", removed);
         }
     }
 
@@ -91,6 +241,139 @@ public class FileStorageService {
      * Get the path to an avatar file
      */
     public Path getAvatarPath(String filename) {
-        return uploadPath.resolve("avatars").resolve(filename);
+        return resolveAvatar(filename).orElseThrow(() -> new IllegalArgumentException("Invalid file name"));
+    }
+
+    /**
+     * Location of a committed attachment
+     */
+    public Path getAttachmentPath(String uploadId) {
+        return attachmentsPath.resolve(checkUploadId(uploadId));
+    }
+
+    /**
+     * Location of an attachment while its chunks are being uploaded
+     */
+    public Path getAttachmentPartPath(String uploadId) {
+        return attachmentsPath.resolve(checkUploadId(uploadId) + ".part");
+    }
+
+    /**
+     * Metadata of an avatar file, from memory after the first lookup.
+     * Empty when the file does not exist or the name escapes the avatars directory.
+     */
+    public Optional<FileMetadata> getAvatarMetadata(String filename) {
+        return resolveAvatar(filename).flatMap(this::getMetadata);
+    }
+
+    /**
+     * Metadata of the thumbnail variant of an avatar for a display size.
+     * Empty when no variant covers that size or it is not generated yet; in the latter
+     * case generation is queued, which also covers avatars uploaded before variants existed.
+     */
+    public Optional<FileMetadata> getAvatarVariantMetadata(String filename, int size) {
+        OptionalInt variantSize = avatarThumbnailService.variantSize(size);
+        if (variantSize.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<FileMetadata> variant = getAvatarMetadata(
+                AvatarThumbnailService.variantName(filename, variantSize.getAsInt()));
+        if (variant.isEmpty()) {
+            getAvatarMetadata(filename).ifPresent(original -> avatarThumbnailService.submit(original.path()));
+        }
+        return variant;
+    }
+
+    /**
+     * Location of an avatar file: in its hash shard for content-addressed names,
+     * flat for legacy names. Empty for names that would escape the avatars directory.
+     */
+    private Optional<Path> resolveAvatar(String filename) {
+        if (BLOB_NAME.matcher(filename).matches()) {
+            return Optional.of(blobPath(filename));
+        }
+        Path path = avatarsPath.resolve(filename).normalize();
+        return path.getParent().equals(avatarsPath) ? Optional.of(path) : Optional.empty();
+    }
+
+    private Path blobPath(String filename) {
+        return avatarsPath.resolve(filename.substring(0, 2)).resolve(filename.substring(2, 4)).resolve(filename);
+    }
+
+    private void deleteWithVariants(Path avatarPath) throws IOException {
+        String filename = avatarPath.getFileName().toString();
+        metadataCache.invalidate(avatarPath);
+        Files.deleteIfExists(avatarPath);
+        for (int size : avatarThumbnailService.getVariantSizes()) {
+            Path variantPath = avatarPath.resolveSibling(AvatarThumbnailService.variantName(filename, size));
+            metadataCache.invalidate(variantPath);
+            Files.deleteIfExists(variantPath);
+        }
+    }
+
+    private static String checkUploadId(String uploadId) {
+        if (!ObjectId.isValid(uploadId)) {
+            throw new IllegalArgumentException("Invalid upload id");
+        }
+        return uploadId;
+    }
+
+    private ReentrantLock lockFor(String hash) {
+        return blobLocks[Integer.parseInt(hash.substring(0, 2), 16) % blobLocks.length];
+    }
+
+    private static String extensionOf(String originalFilename) {
+        if (originalFilename == null || !originalFilename.contains(".")) {
+            return "";
+        }
+        String extension = originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(extension).matches() ? extension : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Optional<FileMetadata> getMetadata(Path path) {
+        FileMetadata metadata = metadataCache.getIfPresent(path);
+        if (metadata != null) {
+            return Optional.of(metadata);
+        }
+
+        // Misses are not cached: an upload may create the file right after
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        String contentType;
+        try {
+            contentType = Files.probeContentType(path);
+        } catch (IOException e) {
+            contentType = null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        metadata = new FileMetadata(path,
+                contentType != null ? contentType : "application/octet-stream",
+                attributes.size(),
+                lastModified,
+                "\"" + Long.toString(lastModified, 36) + "-" + Long.toString(attributes.size(), 36) + "\"");
+        metadataCache.put(path, metadata);
+        return Optional.of(metadata);
+    }
+
+    /**
+     * What is needed to answer a request for a stored file without touching the filesystem.
+     * The ETag is strong: a stored file is never rewritten under the same name.
+     */
+    public record FileMetadata(Path path, String contentType, long size, long lastModified, String etag) {
     }
 }
@@ -1,39 +1,109 @@
 package com.example.ChatApp.Services;
 
+import com.example.ChatApp.Auth.AuthenticatedUser;
+import com.example.ChatApp.Models.User;
+import com.example.ChatApp.Repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
-import io.jsonwebtoken.SignatureAlgorithm;
 
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
 
 @Service
+@RequiredArgsConstructor
 public class JwtService {
+    private final UserRepository userRepository;
+
     @Value("${jwt.secretKey}")
     private String SECRET_KEY;
 
-    public String generateToken(UserDetails userDetails) {
+    @Value("${jwt.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    private static final String USER_ID_CLAIM = "userId";
+
+    private Key signingKey;
+    private JwtParser parser;
+
+    // Verified token -> principal, each entry expires together with its token
+    private Cache<String, AuthenticatedUser> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_KEY));
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, AuthenticatedUser>() {
+                    @Override
+                    public long expireAfterCreate(String token, AuthenticatedUser user, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), user.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, AuthenticatedUser user, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, AuthenticatedUser user, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    public String generateToken(UserDetails userDetails, String userId) {
         return Jwts.builder()
                 .setSubject(userDetails.getUsername())
+                .claim(USER_ID_CLAIM, userId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60)) // 1h
-                .signWith(SignatureAlgorithm.HS256, SECRET_KEY)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public String extractEmail(String token) {
-        return Jwts.parser().setSigningKey(SECRET_KEY)
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    }
+    /**
+     * Verify a token and return who it belongs to. Tokens are parsed once and then
+     * served from memory until they expire.
+     *
+     * @throws JwtException if the token is malformed, badly signed or expired
+     */
+    public AuthenticatedUser authenticate(String token) {
+        AuthenticatedUser cached = verifiedTokens.getIfPresent(token);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        String email = claims.getSubject();
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        if (userId == null) {
+            // Issued before tokens carried the user id
+            userId = userRepository.findByEmail(email)
+                    .map(User::getId)
+                    .orElseThrow(() -> new JwtException("Unknown user"));
+        }
 
-    public boolean isTokenValid(String token) {
-        Date expiration = Jwts.parser().setSigningKey(SECRET_KEY)
-                .parseClaimsJws(token)
-                .getBody()
-                .getExpiration();
-        return !expiration.before(new Date());
+        AuthenticatedUser user = new AuthenticatedUser(userId, email, claims.getExpiration().toInstant());
+        verifiedTokens.put(token, user);
+        return user;
     }
 }
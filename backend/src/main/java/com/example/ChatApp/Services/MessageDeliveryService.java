@@ -0,0 +1,183 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.AckRequest;
+import com.example.ChatApp.Models.DTOs.PendingMessagesDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * At-least-once delivery of chat messages to their receiver.
+ * Every message stays in the receiver's pending queue until the client acknowledges its id
+ * on /app/chat.ack. Pushes are sent after the sequencing lock is released, so a client can
+ * see seq 11 before 10; acknowledging ids rather than a seq watermark keeps 10 pending.
+ * Online users get each message pushed on /user/queue/messages right away; whatever is
+ * still pending, because the user was offline or the push was lost mid-reconnect, is sent
+ * as one batch when the client subscribes to /app/pending after connecting.
+ * <p>
+ * Queues live in memory only and are lost on restart. They are bounded per user, expire,
+ * and only {@code max-users} receivers are tracked at once; beyond that clients fall back
+ * to /app/chat.resync.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageDeliveryService {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry presenceRegistry;
+
+    @Value("${chat.delivery.max-pending-per-user:500}")
+    private int maxPendingPerUser;
+
+    @Value("${chat.delivery.pending-ttl-ms:86400000}")
+    private long pendingTtlMs;
+
+    @Value("${chat.delivery.max-users:100000}")
+    private long maxUsers;
+
+    // Bounded by user count, evicting users that receive rarely first
+    private ConcurrentMap<String, PendingQueue> queues;
+
+    @PostConstruct
+    public void init() {
+        // Evicts on the delivering thread, the map never grows past the limit in between
+        Cache<String, PendingQueue> cache = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .executor(Runnable::run)
+                .build();
+        queues = cache.asMap();
+    }
+
+    /**
+     * Queue a stored message for its receiver and push it if the receiver is online
+     */
+    public void deliver(ChatMessage chatMessage) {
+        String receiverId = chatMessage.getReceiverId();
+        queues.compute(receiverId, (userId, queue) -> {
+            if (queue == null) {
+                queue = new PendingQueue();
+            }
+            queue.add(chatMessage, maxPendingPerUser);
+            return queue;
+        });
+
+        if (presenceRegistry.isOnline(receiverId)) {
+            messagingTemplate.convertAndSendToUser(receiverId, "/queue/messages", chatMessage);
+        }
+    }
+
+    /**
+     * Drop the acknowledged messages from the user's pending queue. Unknown ids are ignored.
+     */
+    public void acknowledge(String userId, AckRequest request) {
+        List<String> messageIds = request.getMessageIds();
+        if (messageIds == null || messageIds.isEmpty()) {
+            throw new IllegalArgumentException("messageIds is required");
+        }
+        if (messageIds.size() > maxPendingPerUser) {
+            throw new IllegalArgumentException("At most " + maxPendingPerUser + " messages can be acknowledged at once");
+        }
+        queues.computeIfPresent(userId, (id, queue) -> {
+            queue.remove(messageIds);
+            return queue.isEmpty() ? null : queue;
+        });
+    }
+
+    /**
+     * Take back a message that was delivered but turned out not to be stored, so it is
+     * not sent again. A push already sent cannot be recalled.
+     */
+    public void retract(ChatMessage chatMessage) {
+        queues.computeIfPresent(chatMessage.getReceiverId(), (id, queue) -> {
+            queue.remove(List.of(chatMessage.getId()));
+            return queue.isEmpty() ? null : queue;
+        });
+    }
+
+    /**
+     * Everything the user has not acknowledged yet. Messages stay queued until they are.
+     */
+    public PendingMessagesDTO pending(String userId) {
+        PendingQueue queue = queues.get(userId);
+        if (queue == null) {
+            return PendingMessagesDTO.builder()
+                    .messages(List.of())
+                    .build();
+        }
+        return queue.snapshot();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.delivery.sweep-interval-ms:600000}")
+    public void sweepExpired() {
+        Instant cutoff = Instant.now().minusMillis(pendingTtlMs);
+        int[] expired = {0};
+        for (String userId : queues.keySet()) {
+            queues.computeIfPresent(userId, (id, queue) -> {
+                expired[0] += queue.expire(cutoff);
+                return queue.isEmpty() ? null : queue;
+            });
+        }
+        if (expired[0] > 0) {
+            log.info("Expired {} unacknowledged messages", expired[0]);
+        }
+    }
+
+    /**
+     * One user's unacknowledged messages, oldest first. Guarded by its own monitor.
+     */
+    private static final class PendingQueue {
+        private final LinkedHashMap<String, ChatMessage> messages = new LinkedHashMap<>();
+        private boolean overflowed;
+
+        synchronized void add(ChatMessage chatMessage, int capacity) {
+            messages.put(chatMessage.getId(), chatMessage);
+            Iterator<ChatMessage> oldest = messages.values().iterator();
+            while (messages.size() > capacity) {
+                oldest.next();
+                oldest.remove();
+                overflowed = true;
+            }
+        }
+
+        synchronized void remove(Collection<String> messageIds) {
+            for (String messageId : messageIds) {
+                messages.remove(messageId);
+            }
+            if (messages.isEmpty()) {
+                overflowed = false;
+            }
+        }
+
+        synchronized int expire(Instant cutoff) {
+            int before = messages.size();
+            messages.values().removeIf(message -> message.getTimestamp().isBefore(cutoff));
+            return before - messages.size();
+        }
+
+        synchronized boolean isEmpty() {
+            return messages.isEmpty();
+        }
+
+        synchronized PendingMessagesDTO snapshot() {
+            return PendingMessagesDTO.builder()
+                    .messages(new ArrayList<>(messages.values()))
+                    .overflowed(overflowed)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.MessageCursor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Most recent messages of each active chat room, serialized into one off-heap arena.
+ * The arena is split into fixed-size slots, one per cached room; each slot is a ring
+ * of variable-length records. When every slot is taken the least recently used room
+ * is evicted. Only a few int arrays per room live on the heap.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageTailCache {
+    private final ObjectMapper objectMapper;
+
+    @Value("${chat.tail-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.tail-cache.messages-per-room:50}")
+    private int messagesPerRoom;
+
+    @Value("${chat.tail-cache.bytes-per-room:65536}")
+    private int bytesPerRoom;
+
+    @Value("${chat.tail-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    private ByteBuffer arena;
+
+    // Guarded by itself; access-ordered for LRU eviction
+    private final LinkedHashMap<String, RoomTail> rooms = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        int slots = (int) Math.min(maxBytes, Integer.MAX_VALUE) / bytesPerRoom;
+        if (slots == 0) {
+            enabled = false;
+            log.warn("Message tail cache budget is smaller than one room, cache disabled");
+            return;
+        }
+        arena = ByteBuffer.allocateDirect(slots * bytesPerRoom);
+        for (int slot = 0; slot < slots; slot++) {
+            freeSlots.push(slot);
+        }
+        log.info("Message tail cache: {} rooms x {} messages, {} bytes off-heap", slots, messagesPerRoom, arena.capacity());
+    }
+
+    /**
+     * Append a new message to the tail of its room
+     */
+    public void append(ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        byte[] record = serialize(message);
+        if (record == null) {
+            return;
+        }
+        while (true) {
+            RoomTail tail = acquire(message.getChatId());
+            synchronized (tail) {
+                // Evicted between acquire and lock: retry so the new ring does not miss this message
+                if (!tail.released) {
+                    tail.append(record);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The latest {@code size} messages of a room, newest first, if the cache can answer
+     * without the database: either it holds that many messages or the room's whole history.
+     */
+    public Optional<CachedPage> latest(String chatId, int size) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        RoomTail tail;
+        synchronized (rooms) {
+            tail = rooms.get(chatId);
+        }
+        if (tail == null) {
+            return Optional.empty();
+        }
+
+        List<byte[]> records;
+        boolean hasMore;
+        synchronized (tail) {
+            if (tail.released || (tail.count < size && !tail.complete)) {
+                return Optional.empty();
+            }
+            records = tail.newest(Math.min(size, tail.count));
+            hasMore = tail.count > size || !tail.complete;
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            ChatMessage message = deserialize(record);
+            if (message == null) {
+                return Optional.empty();
+            }
+            messages.add(message);
+        }
+        messages.sort(Comparator.comparing(MessageCursor::of).reversed());
+        return Optional.of(new CachedPage(messages, hasMore));
+    }
+
+    /**
+     * Up to {@code size} messages of a room with a sequence number above {@code afterSeq},
+     * oldest first, if the cache holds all of them: the ring reaches back to {@code afterSeq}
+     * (or to a message from before sequencing) or it holds the room's whole history.
+     */
+    public Optional<CachedPage> after(String chatId, long afterSeq, int size) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        RoomTail tail;
+        synchronized (rooms) {
+            tail = rooms.get(chatId);
+        }
+        if (tail == null) {
+            return Optional.empty();
+        }
+
+        List<byte[]> records;
+        boolean complete;
+        synchronized (tail) {
+            if (tail.released) {
+                return Optional.empty();
+            }
+            records = tail.newest(tail.count);
+            complete = tail.complete;
+        }
+
+        // Newest first, stop at the first message the client already has
+        List<ChatMessage> missing = new ArrayList<>();
+        boolean covered = complete;
+        for (byte[] record : records) {
+            ChatMessage message = deserialize(record);
+            if (message == null) {
+                return Optional.empty();
+            }
+            if (message.getSeq() == null || message.getSeq() <= afterSeq) {
+                covered = true;
+                break;
+            }
+            missing.add(message);
+        }
+        if (!covered) {
+            return Optional.empty();
+        }
+
+        missing.sort(Comparator.comparing(ChatMessage::getSeq));
+        boolean hasMore = missing.size() > size;
+        return Optional.of(new CachedPage(new ArrayList<>(missing.subList(0, Math.min(size, missing.size()))), hasMore));
+    }
+
+    /**
+     * A cached message of a room by id, empty if it is not in the room's ring
+     */
+    public Optional<ChatMessage> find(String chatId, String messageId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        RoomTail tail;
+        synchronized (rooms) {
+            tail = rooms.get(chatId);
+        }
+        if (tail == null) {
+            return Optional.empty();
+        }
+
+        List<byte[]> records;
+        synchronized (tail) {
+            if (tail.released) {
+                return Optional.empty();
+            }
+            records = tail.newest(tail.count);
+        }
+        // Newest first, receipts are mostly for the latest messages
+        for (byte[] record : records) {
+            ChatMessage message = deserialize(record);
+            if (message != null && messageId.equals(message.getId())) {
+                return Optional.of(message);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Seed a room with the latest messages read from the database, merging whatever
+     * was appended meanwhile.
+     *
+     * @param newestFirst latest messages of the room, newest first
+     * @param complete    whether these are all messages of the room
+     */
+    public void prime(String chatId, List<ChatMessage> newestFirst, boolean complete) {
+        if (!enabled) {
+            return;
+        }
+        RoomTail tail = acquire(chatId);
+        synchronized (tail) {
+            if (tail.released) {
+                return;
+            }
+            Map<String, ChatMessage> merged = new HashMap<>();
+            newestFirst.forEach(message -> merged.put(message.getId(), message));
+            for (byte[] record : tail.newest(tail.count)) {
+                ChatMessage cached = deserialize(record);
+                if (cached != null) {
+                    merged.put(cached.getId(), cached);
+                }
+            }
+
+            List<ChatMessage> ordered = new ArrayList<>(merged.values());
+            ordered.sort(Comparator.comparing(MessageCursor::of));
+            boolean truncated = ordered.size() > messagesPerRoom;
+            tail.clear();
+            for (ChatMessage message : ordered.subList(Math.max(0, ordered.size() - messagesPerRoom), ordered.size())) {
+                byte[] record = serialize(message);
+                if (record != null) {
+                    tail.append(record);
+                }
+            }
+            tail.complete = complete && !truncated && !tail.dropped;
+        }
+    }
+
+    /**
+     * Drop a room's cached messages, the next read primes it from the database again
+     */
+    public void evict(String chatId) {
+        if (!enabled) {
+            return;
+        }
+        RoomTail tail;
+        synchronized (rooms) {
+            tail = rooms.remove(chatId);
+        }
+        if (tail != null) {
+            release(tail);
+        }
+    }
+
+    private RoomTail acquire(String chatId) {
+        while (true) {
+            RoomTail victim;
+            synchronized (rooms) {
+                RoomTail tail = rooms.get(chatId);
+                if (tail != null) {
+                    return tail;
+                }
+                Integer slot = freeSlots.poll();
+                if (slot != null) {
+                    tail = new RoomTail(slot);
+                    rooms.put(chatId, tail);
+                    return tail;
+                }
+                Iterator<RoomTail> eldest = rooms.values().iterator();
+                victim = eldest.next();
+                eldest.remove();
+            }
+            release(victim);
+        }
+    }
+
+    private void release(RoomTail tail) {
+        // Wait for in-flight reads and writes on the tail before its slot is reused
+        synchronized (tail) {
+            tail.released = true;
+        }
+        synchronized (rooms) {
+            freeSlots.push(tail.slot);
+        }
+    }
+
+    private byte[] serialize(ChatMessage message) {
+        try {
+            return objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not cache message {}", message.getId(), e);
+            return null;
+        }
+    }
+
+    private ChatMessage deserialize(byte[] record) {
+        try {
+            return objectMapper.readValue(record, ChatMessage.class);
+        } catch (IOException e) {
+            log.warn("Corrupt record in message tail cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param messages newest first from {@link #latest}, oldest first from {@link #after}
+     */
+    public record CachedPage(List<ChatMessage> messages, boolean hasMore) {
+    }
+
+    /**
+     * Ring of records inside one arena slot. Records are written one after another and
+     * wrap to the start of the slot when the next one does not fit; the oldest records
+     * are dropped as they get overwritten. Guarded by its own monitor.
+     */
+    private final class RoomTail {
+        final int slot;
+        final int base;
+        final int[] offsets = new int[messagesPerRoom];
+        final int[] lengths = new int[messagesPerRoom];
+        int head;
+        int count;
+        int writePos;
+        // The ring holds every message of the room
+        boolean complete;
+        // Messages were dropped since the last prime
+        boolean dropped;
+        boolean released;
+
+        RoomTail(int slot) {
+            this.slot = slot;
+            this.base = slot * bytesPerRoom;
+        }
+
+        void append(byte[] record) {
+            int length = record.length;
+            if (length > bytesPerRoom) {
+                // Cannot keep this one, and a gap in the ring would serve wrong pages
+                clear();
+                dropped = true;
+                return;
+            }
+
+            int start = writePos;
+            if (start + length > bytesPerRoom) {
+                // Records after the write position are the oldest ones, they go with the wrap
+                while (count > 0 && offsets[head] >= start) {
+                    dropOldest();
+                }
+                start = 0;
+            }
+            while (count > 0 && (count == messagesPerRoom
+                    || (offsets[head] < start + length && start < offsets[head] + lengths[head]))) {
+                dropOldest();
+            }
+
+            arena.put(base + start, record);
+            int index = (head + count) % messagesPerRoom;
+            offsets[index] = start;
+            lengths[index] = length;
+            count++;
+            writePos = start + length;
+        }
+
+        List<byte[]> newest(int n) {
+            List<byte[]> records = new ArrayList<>(n);
+            for (int i = count - 1; i >= count - n; i--) {
+                int index = (head + i) % messagesPerRoom;
+                byte[] record = new byte[lengths[index]];
+                arena.get(base + offsets[index], record);
+                records.add(record);
+            }
+            return records;
+        }
+
+        void clear() {
+            head = 0;
+            count = 0;
+            writePos = 0;
+            complete = false;
+            dropped = false;
+        }
+
+        private void dropOldest() {
+            head = (head + 1) % messagesPerRoom;
+            count--;
+            complete = false;
+            dropped = true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.User;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buffers online/lastSeen changes and writes them periodically as one bulk $set.
+ * Only the latest state per user is kept, so a session flapping within one flush
+ * window costs a single write.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresencePersistenceService {
+    private final MongoTemplate mongoTemplate;
+
+    private final ConcurrentHashMap<String, PresenceState> pending = new ConcurrentHashMap<>();
+
+    public void record(String userId, boolean online, Instant lastSeen) {
+        pending.put(userId, new PresenceState(online, lastSeen));
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:2000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int updates = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        for (String userId : pending.keySet()) {
+            PresenceState state = pending.remove(userId);
+            if (state != null) {
+                bulk.updateOne(Query.query(Criteria.where("_id").is(userId)), new Update()
+                        .set("online", state.online())
+                        .set("lastSeen", state.lastSeen()));
+                updates++;
+            }
+        }
+        if (updates == 0) {
+            return;
+        }
+
+        try {
+            bulk.execute();
+        } catch (DataAccessException e) {
+            log.error("Failed to persist presence of {} users", updates, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private record PresenceState(boolean online, Instant lastSeen) {
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.DTOs.PresenceEvent;
+import com.example.ChatApp.Models.DTOs.PresenceSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online users, ref-counted by WebSocket session so a user with several tabs stays
+ * online until the last one closes. Only join/leave transitions are broadcast, as
+ * versioned deltas on /topic/online; clients get a full snapshot once on subscribe.
+ * <p>
+ * Connects and disconnects only update the session map and queue the user id. A single
+ * publisher thread compares each queued user's current state with the published one,
+ * assigns the next version and sends the delta, so versions leave in order without any
+ * lock held across a send. The snapshot is taken from the published state, so version N
+ * always includes exactly the deltas up to N.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceRegistry {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresencePersistenceService presencePersistenceService;
+
+    private final ConcurrentHashMap<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Users whose state may have changed since it was last published; queued once until picked up
+    private final BlockingQueue<String> changed = new LinkedBlockingQueue<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    // Written by the publisher thread only, read by snapshot(); guarded by itself
+    private final Set<String> published = new HashSet<>();
+    private long version;
+
+    private Thread publisher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        publisher = new Thread(this::runPublisher, "presence-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Register a session. Broadcasts a join delta if this is the user's first session.
+     */
+    public void connect(String userId, String sessionId) {
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        markChanged(userId);
+    }
+
+    /**
+     * Unregister a session. Broadcasts a leave delta if it was the user's last session.
+     * Safe to call twice for the same session.
+     */
+    public void disconnect(String userId, String sessionId) {
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        markChanged(userId);
+    }
+
+    public boolean isOnline(String userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    public PresenceSnapshot snapshot() {
+        synchronized (published) {
+            return PresenceSnapshot.builder()
+                    .version(version)
+                    .onlineUserIds(Set.copyOf(published))
+                    .build();
+        }
+    }
+
+    private void markChanged(String userId) {
+        if (queued.add(userId)) {
+            changed.add(userId);
+        }
+    }
+
+    private void runPublisher() {
+        while (running || !changed.isEmpty()) {
+            try {
+                String userId = changed.poll(100, TimeUnit.MILLISECONDS);
+                if (userId != null) {
+                    publishIfChanged(userId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to publish presence change", e);
+            }
+        }
+    }
+
+    private void publishIfChanged(String userId) {
+        // Dequeue before reading the state: a change after this point queues the user again
+        queued.remove(userId);
+        boolean online = sessionsByUser.containsKey(userId);
+
+        long deltaVersion;
+        synchronized (published) {
+            boolean changedState = online ? published.add(userId) : published.remove(userId);
+            if (!changedState) {
+                // Joined and left again before the first change was published
+                return;
+            }
+            deltaVersion = ++version;
+        }
+
+        Instant now = Instant.now();
+        presencePersistenceService.record(userId, online, now);
+        messagingTemplate.convertAndSend("/topic/online", PresenceEvent.builder()
+                .version(deltaVersion)
+                .userId(userId)
+                .online(online)
+                .lastSeen(now)
+                .build());
+
+        // Kept for clients that only track individual status changes
+        messagingTemplate.convertAndSend("/topic/status", Map.of(
+                "userId", userId,
+                "isOnline", online,
+                "lastSeen", now.toString()));
+    }
+}
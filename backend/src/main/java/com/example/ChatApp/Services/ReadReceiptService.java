@@ -0,0 +1,147 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.ConversationSummary;
+import com.example.ChatApp.Models.DTOs.ReadReceiptEvent;
+import com.example.ChatApp.Models.DTOs.ReadReceiptRequest;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read watermarks per user and room. Receipts are coalesced in memory and flushed
+ * periodically, so scrolling through a chat costs at most one write per room per interval.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadReceiptService {
+    private final MongoTemplate mongoTemplate;
+    private final ChatRoomService chatRoomService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatMessageWriter chatMessageWriter;
+    private final MessageTailCache messageTailCache;
+
+    // Latest unflushed watermark by conversation summary id
+    private final ConcurrentHashMap<String, Watermark> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Record that a user has read a conversation up to a message
+     */
+    public void markRead(String userId, ReadReceiptRequest request) {
+        if (request.getOtherUserId() == null || request.getMessageId() == null) {
+            throw new IllegalArgumentException("otherUserId and messageId are required");
+        }
+        String roomId = chatRoomService.getChatRoomId(userId, request.getOtherUserId());
+        // The watermark is the stored timestamp of the message, never the client's clock
+        ChatMessage message = findReceivedMessage(roomId, request.getOtherUserId(), request.getMessageId())
+                .orElseThrow(() -> new IllegalArgumentException("Unknown message " + request.getMessageId()));
+        Watermark watermark = new Watermark(userId, request.getOtherUserId(), roomId, message.getId(), message.getTimestamp());
+
+        pending.merge(ConversationSummary.idFor(userId, roomId), watermark,
+                (current, next) -> next.readAt().isAfter(current.readAt()) ? next : current);
+    }
+
+    /**
+     * The message if it belongs to the room and was sent by the other user. Looked up in the
+     * write-behind queue and the tail cache first, receipts are mostly for recent messages.
+     */
+    private Optional<ChatMessage> findReceivedMessage(String roomId, String senderId, String messageId) {
+        Optional<ChatMessage> found = chatMessageWriter.pending(roomId).stream()
+                .filter(message -> messageId.equals(message.getId()))
+                .findFirst();
+        if (found.isEmpty()) {
+            found = messageTailCache.find(roomId, messageId);
+        }
+        if (found.isEmpty()) {
+            if (!ObjectId.isValid(messageId)) {
+                return Optional.empty();
+            }
+            Query query = Query.query(Criteria.where("_id").is(new ObjectId(messageId)));
+            query.fields().include("chatId").include("senderId").include("timestamp");
+            found = Optional.ofNullable(mongoTemplate.findOne(query, ChatMessage.class));
+        }
+        return found.filter(message -> roomId.equals(message.getChatId())
+                && senderId.equals(message.getSenderId())
+                && message.getTimestamp() != null);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.read-receipts.flush-interval-ms:1000}")
+    public void flush() {
+        for (String summaryId : pending.keySet()) {
+            Watermark watermark = pending.remove(summaryId);
+            if (watermark != null) {
+                try {
+                    apply(summaryId, watermark);
+                } catch (DataAccessException e) {
+                    log.error("Failed to store read receipt for {}", summaryId, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void apply(String summaryId, Watermark watermark) {
+        // Only move the watermark forward, a late receipt for an older message changes nothing
+        Criteria advances = new Criteria().orOperator(
+                Criteria.where("lastReadAt").lt(watermark.readAt()),
+                Criteria.where("lastReadAt").exists(false));
+        Update update = new Update()
+                .set("lastReadAt", watermark.readAt())
+                .set("lastReadMessageId", watermark.messageId())
+                .set("unreadCount", 0);
+
+        // Common case: nothing arrived after the watermark, reset the counter
+        long matched = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(summaryId)
+                        .and("lastMessageTime").lte(watermark.readAt())
+                        .andOperator(advances)),
+                update, ConversationSummary.class).getMatchedCount();
+
+        if (matched == 0) {
+            // Newer messages arrived meanwhile, count only those. Messages still tracked by the
+            // writer have not been added to the summary yet and will be counted when they are.
+            List<ObjectId> inFlight = chatMessageWriter.pending(watermark.roomId()).stream()
+                    .map(ChatMessage::getId)
+                    .filter(ObjectId::isValid)
+                    .map(ObjectId::new)
+                    .toList();
+            long unread = mongoTemplate.count(Query.query(Criteria.where("chatId").is(watermark.roomId())
+                    .and("receiverId").is(watermark.userId())
+                    .and("timestamp").gt(watermark.readAt())
+                    .and("_id").nin(inFlight)), ChatMessage.class);
+            matched = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(summaryId).andOperator(advances)),
+                    update.set("unreadCount", unread), ConversationSummary.class).getMatchedCount();
+            if (matched == 0) {
+                return;
+            }
+        }
+
+        messagingTemplate.convertAndSendToUser(watermark.otherUserId(), "/queue/read", ReadReceiptEvent.builder()
+                .chatId(watermark.roomId())
+                .readerId(watermark.userId())
+                .messageId(watermark.messageId())
+                .readAt(watermark.readAt())
+                .build());
+    }
+
+    private record Watermark(String userId, String otherUserId, String roomId, String messageId, Instant readAt) {
+    }
+}
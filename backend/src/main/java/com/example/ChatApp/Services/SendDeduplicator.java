@@ -0,0 +1,113 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Recently stored messages by (sender, client message id), so a retried send returns the
+ * message stored the first time. Two generations of a hash map: stored messages go into
+ * the current one, lookups check both, and the current one becomes the previous one once
+ * it is {@code window-ms} old or holds {@code max-ids} entries. An id is remembered for at
+ * least one window unless the size limit forced an early rotation, see {@link #isExact}.
+ * <p>
+ * Callers hold {@link #lockFor} around lookup, store and {@link #put}, so a concurrent
+ * retry waits for the first send and then finds the stored message.
+ */
+@Service
+public class SendDeduplicator {
+
+    @Value("${chat.dedup.window-ms:600000}")
+    private long windowMs;
+
+    @Value("${chat.dedup.max-ids:100000}")
+    private int maxIds;
+
+    private final Clock clock;
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    private volatile Generations generations;
+
+    // When the size limit last rotated a generation before its time was up. Starts at the
+    // start time: ids sent before a restart are not in the window either.
+    private volatile long earlyRotationAt;
+
+    public SendDeduplicator() {
+        this(Clock.systemUTC());
+    }
+
+    SendDeduplicator(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        long now = clock.millis();
+        generations = new Generations(new ConcurrentHashMap<>(), Map.of(), now);
+        earlyRotationAt = now;
+    }
+
+    /**
+     * Lock striped by sender and client id, to hold from the lookup until the message is put
+     */
+    public ReentrantLock lockFor(String senderId, String clientMessageId) {
+        return locks[Math.floorMod(key(senderId, clientMessageId).hashCode(), locks.length)];
+    }
+
+    /**
+     * The stored message sent with this sender and client id, null if not in the window
+     */
+    public ChatMessage get(String senderId, String clientMessageId) {
+        String key = key(senderId, clientMessageId);
+        Generations current = rotateIfNeeded();
+        ChatMessage chatMessage = current.current().get(key);
+        return chatMessage != null ? chatMessage : current.previous().get(key);
+    }
+
+    /**
+     * Remember a message once it is stored, with its seq and timestamp assigned
+     */
+    public void put(String senderId, String clientMessageId, ChatMessage chatMessage) {
+        rotateIfNeeded().current().put(key(senderId, clientMessageId), chatMessage);
+    }
+
+    /**
+     * Whether a miss in the window is conclusive. False for one window after startup and
+     * after the size limit cut a generation short; callers then have to check the database.
+     */
+    public boolean isExact() {
+        return clock.millis() - earlyRotationAt >= windowMs;
+    }
+
+    private Generations rotateIfNeeded() {
+        Generations current = generations;
+        long now = clock.millis();
+        boolean full = current.current().size() >= maxIds;
+        if (!full && now - current.startedAt() < windowMs) {
+            return current;
+        }
+        synchronized (this) {
+            if (generations != current) {
+                return generations;
+            }
+            if (full) {
+                earlyRotationAt = now;
+            }
+            generations = new Generations(new ConcurrentHashMap<>(), current.current(), now);
+            return generations;
+        }
+    }
+
+    private static String key(String senderId, String clientMessageId) {
+        return senderId + ":" + clientMessageId;
+    }
+
+    private record Generations(ConcurrentHashMap<String, ChatMessage> current,
+                               Map<String, ChatMessage> previous,
+                               long startedAt) {
+    }
+}
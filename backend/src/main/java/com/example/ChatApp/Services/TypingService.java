@@ -0,0 +1,164 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.DTOs.TypingEvent;
+import com.example.ChatApp.Models.DTOs.TypingRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typing indicators, kept in memory only.
+ * Keystroke events are forwarded to the other participant on /user/queue/typing at most
+ * once per {@code throttle-ms} while the user keeps typing. A stop is forwarded right
+ * away, and a user who goes quiet for {@code ttl-ms} is reported as stopped by the sweep.
+ * <p>
+ * Each change bumps the version of the user's state in the map. Sending happens outside
+ * the map's lock by one thread per key at a time: it sends the latest state, then checks
+ * the version and sends again if a newer change arrived meanwhile, so the other participant
+ * always ends up with the latest state and a stop is never overtaken by an earlier start.
+ */
+@Service
+@RequiredArgsConstructor
+public class TypingService {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceRegistry presenceRegistry;
+
+    @Value("${chat.typing.throttle-ms:2000}")
+    private long throttleMs;
+
+    @Value("${chat.typing.ttl-ms:5000}")
+    private long ttlMs;
+
+    // Keyed by room and typing user
+    private final ConcurrentHashMap<String, TypingState> states = new ConcurrentHashMap<>();
+
+    public void typing(String userId, TypingRequest request) {
+        String otherUserId = request.getOtherUserId();
+        if (otherUserId == null || otherUserId.equals(userId)) {
+            throw new IllegalArgumentException("otherUserId is required");
+        }
+        String key = ChatRoomService.chatRoomIdFor(userId, otherUserId) + ":" + userId;
+        long now = System.currentTimeMillis();
+        boolean typing = request.isTyping();
+
+        TypingState[] claimed = new TypingState[1];
+        states.compute(key, (k, state) -> {
+            if (state == null) {
+                if (!typing) {
+                    return null;
+                }
+                state = new TypingState(userId, otherUserId);
+            }
+            if (typing) {
+                state.lastSeenAt = now;
+                if (now - state.lastForwardedAt < throttleMs) {
+                    return state;
+                }
+                state.lastForwardedAt = now;
+            } else if (!state.typing) {
+                return state;
+            }
+            claimed[0] = change(state, typing);
+            return state;
+        });
+        if (claimed[0] != null) {
+            forwardLatest(key, claimed[0]);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.sweep-interval-ms:1000}")
+    public void sweepExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        for (String key : states.keySet()) {
+            TypingState[] claimed = new TypingState[1];
+            states.computeIfPresent(key, (k, state) -> {
+                if (state.typing && state.lastSeenAt < cutoff) {
+                    claimed[0] = change(state, false);
+                }
+                return state;
+            });
+            if (claimed[0] != null) {
+                forwardLatest(key, claimed[0]);
+            }
+        }
+    }
+
+    /**
+     * Record a change, called inside compute. Returns the state if the caller has to send it,
+     * null if another thread is sending and will pick up the change.
+     */
+    private static TypingState change(TypingState state, boolean typing) {
+        if (!typing) {
+            // A start right after a stop is forwarded again
+            state.lastForwardedAt = 0;
+        }
+        state.typing = typing;
+        state.version++;
+        if (state.sending) {
+            return null;
+        }
+        state.sending = true;
+        return state;
+    }
+
+    /**
+     * Send the latest state until no newer change arrived while sending, then give up the
+     * claim. A stopped state is removed once its stop is sent.
+     */
+    private void forwardLatest(String key, TypingState state) {
+        boolean[] done = new boolean[1];
+        while (!done[0]) {
+            // Version before the state, so a change in between is sent twice rather than lost
+            long version = state.version;
+            try {
+                forward(state.userId, state.otherUserId, state.typing);
+            } catch (RuntimeException e) {
+                states.computeIfPresent(key, (k, current) -> {
+                    current.sending = false;
+                    return current.typing ? current : null;
+                });
+                throw e;
+            }
+            states.computeIfPresent(key, (k, current) -> {
+                if (current.version != version) {
+                    return current;
+                }
+                done[0] = true;
+                current.sending = false;
+                return current.typing ? current : null;
+            });
+        }
+    }
+
+    private void forward(String userId, String otherUserId, boolean typing) {
+        if (!presenceRegistry.isOnline(otherUserId)) {
+            return;
+        }
+        messagingTemplate.convertAndSendToUser(otherUserId, "/queue/typing", TypingEvent.builder()
+                .userId(userId)
+                .typing(typing)
+                .build());
+    }
+
+    /**
+     * Guarded by the map's compute; typing and version are also read by the sending thread
+     */
+    private static final class TypingState {
+        final String userId;
+        final String otherUserId;
+        long lastSeenAt;
+        long lastForwardedAt;
+        boolean sending;
+        volatile boolean typing;
+        volatile long version;
+
+        TypingState(String userId, String otherUserId) {
+            this.userId = userId;
+            this.otherUserId = otherUserId;
+        }
+    }
+}
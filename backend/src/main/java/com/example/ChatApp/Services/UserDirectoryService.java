@@ -0,0 +1,107 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.DTOs.DirectoryEntryDTO;
+import com.example.ChatApp.Models.DTOs.DirectoryPageDTO;
+import com.example.ChatApp.Models.DirectoryCursor;
+import com.example.ChatApp.Models.User;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paginated user directory with a directory-wide version. The version changes whenever
+ * a user is saved or deleted, so clients can revalidate pages with an ETag.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserDirectoryService extends AbstractMongoEventListener<User> {
+    private final MongoTemplate mongoTemplate;
+
+    public static final Set<String> SORT_FIELDS = Set.of("username", "name");
+
+    // Versions restart with the process, the epoch keeps ETags from colliding across restarts
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Current version of the directory as a quoted ETag value.
+     * Read it before loading a page, so the tag is never newer than the content.
+     */
+    public String etag() {
+        return "\"" + Long.toString(epoch, 36) + "-" + version.get() + "\"";
+    }
+
+    /**
+     * One page of users ordered by {@code sort} then id, starting after {@code cursor}
+     */
+    public DirectoryPageDTO getPage(String sort, String cursor, int size) {
+        if (!SORT_FIELDS.contains(sort)) {
+            throw new IllegalArgumentException("Unsupported sort: " + sort);
+        }
+        DirectoryCursor after = cursor != null ? DirectoryCursor.decode(cursor) : null;
+        if (after != null && !after.sort().equals(sort)) {
+            throw new IllegalArgumentException("Cursor does not match sort " + sort);
+        }
+
+        Criteria criteria = new Criteria();
+        if (after != null) {
+            Object cursorId = ObjectId.isValid(after.userId())
+                    ? new ObjectId(after.userId())
+                    : after.userId();
+            // Missing values sort before any string
+            criteria = after.value() == null
+                    ? criteria.orOperator(
+                            Criteria.where(sort).is(null).and("_id").gt(cursorId),
+                            Criteria.where(sort).type(JsonSchemaObject.Type.STRING))
+                    : criteria.orOperator(
+                            Criteria.where(sort).gt(after.value()),
+                            Criteria.where(sort).is(after.value()).and("_id").gt(cursorId));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, sort).and(Sort.by(Sort.Direction.ASC, "_id")))
+                .limit(size + 1);
+        query.fields().include("name").include("username").include("avatarUrl");
+
+        List<User> users = mongoTemplate.find(query, User.class);
+        boolean hasMore = users.size() > size;
+        List<User> page = hasMore ? users.subList(0, size) : users;
+
+        List<DirectoryEntryDTO> entries = new ArrayList<>(page.size());
+        for (User user : page) {
+            entries.add(DirectoryEntryDTO.builder()
+                    .id(user.getId())
+                    .name(user.getName())
+                    .username(user.getUsername())
+                    .avatarUrl(user.getAvatarUrl())
+                    .build());
+        }
+        return DirectoryPageDTO.builder()
+                .users(entries)
+                .nextCursor(hasMore ? DirectoryCursor.of(sort, page.get(page.size() - 1)).encode() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory search index over usernames and names.
+ * Queries of three characters or more match substrings through a trigram index;
+ * shorter queries match the start of the username or of a word of the name.
+ * Built at startup and kept in sync with every save of a user.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserSearchIndex extends AbstractMongoEventListener<User> {
+    private final MongoTemplate mongoTemplate;
+
+    private static final int GRAM = 3;
+
+    private static final Comparator<Match> RANKING = Comparator
+            .comparingInt(Match::rank)
+            .thenComparingInt(match -> match.entry().username().length())
+            .thenComparing(match -> match.entry().username());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final TreeMap<String, Set<String>> terms = new TreeMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        Query query = new Query();
+        query.fields().include("username").include("name");
+
+        int count = 0;
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            for (User user : (Iterable<User>) users::iterator) {
+                index(user);
+                count++;
+            }
+        }
+        log.info("User search index built with {} users", count);
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        index(event.getSource());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Object id = event.getSource().get("_id");
+        if (id != null) {
+            remove(id.toString());
+        }
+    }
+
+    /**
+     * Ids of the best matching users, best first, without {@code excludeUserId}
+     */
+    public List<String> search(String query, String excludeUserId, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            Collection<String> candidates = q.length() >= GRAM ? substringCandidates(q) : prefixCandidates(q);
+
+            // Keep the best `limit` matches, worst on top; never more than there are candidates,
+            // which also keeps the capacity from overflowing for a huge limit
+            int kept = Math.min(limit, candidates.size());
+            PriorityQueue<Match> best = new PriorityQueue<>(kept + 1, RANKING.reversed());
+            for (String userId : candidates) {
+                if (userId.equals(excludeUserId)) {
+                    continue;
+                }
+                Entry entry = entries.get(userId);
+                int rank = rank(entry, q);
+                if (rank < 0) {
+                    continue;
+                }
+                best.add(new Match(entry, rank));
+                if (best.size() > kept) {
+                    best.poll();
+                }
+            }
+
+            List<Match> matches = new ArrayList<>(best);
+            matches.sort(RANKING);
+            return matches.stream().map(match -> match.entry().userId()).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(User user) {
+        if (user.getId() == null) {
+            return;
+        }
+        Entry entry = new Entry(user.getId(), normalize(user.getUsername()), normalize(user.getName()));
+
+        lock.writeLock().lock();
+        try {
+            removeEntry(user.getId());
+            entries.put(entry.userId(), entry);
+            for (String gram : grams(entry)) {
+                trigrams.computeIfAbsent(gram, key -> new HashSet<>()).add(entry.userId());
+            }
+            for (String term : terms(entry)) {
+                terms.computeIfAbsent(term, key -> new HashSet<>()).add(entry.userId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeEntry(String userId) {
+        Entry previous = entries.remove(userId);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            removePosting(trigrams, gram, userId);
+        }
+        for (String term : terms(previous)) {
+            removePosting(terms, term, userId);
+        }
+    }
+
+    private Collection<String> substringCandidates(String q) {
+        // Intersect postings, smallest first
+        List<Set<String>> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            Set<String> posting = trigrams.get(q.substring(i, i + GRAM));
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<String> candidates = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postings.get(i));
+        }
+        return candidates;
+    }
+
+    private Collection<String> prefixCandidates(String q) {
+        Set<String> candidates = new HashSet<>();
+        terms.subMap(q, q + Character.MAX_VALUE).values().forEach(candidates::addAll);
+        return candidates;
+    }
+
+    /**
+     * 0 exact username, 1 username prefix, 2 name or name word prefix, 3 substring, -1 no match
+     */
+    private static int rank(Entry entry, String q) {
+        if (entry.username().equals(q)) {
+            return 0;
+        }
+        if (entry.username().startsWith(q)) {
+            return 1;
+        }
+        if (entry.name().startsWith(q) || entry.name().contains(" " + q)) {
+            return 2;
+        }
+        if (q.length() >= GRAM && (entry.username().contains(q) || entry.name().contains(q))) {
+            return 3;
+        }
+        return -1;
+    }
+
+    private static Set<String> grams(Entry entry) {
+        Set<String> grams = new HashSet<>();
+        for (String value : List.of(entry.username(), entry.name())) {
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> terms(Entry entry) {
+        Set<String> terms = new HashSet<>();
+        if (!entry.username().isEmpty()) {
+            terms.add(entry.username());
+        }
+        for (String word : entry.name().split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static void removePosting(Map<String, Set<String>> index, String key, String userId) {
+        Set<String> posting = index.get(key);
+        if (posting != null) {
+            posting.remove(userId);
+            if (posting.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Entry(String userId, String username, String name) {
+    }
+
+    private record Match(Entry entry, int rank) {
+    }
+}
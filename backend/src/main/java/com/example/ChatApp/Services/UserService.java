@@ -1,16 +1,15 @@
 package com.example.ChatApp.Services;
 
 import com.example.ChatApp.Exceptions.UserNotFoundException;
-import com.example.ChatApp.Models.ChatRoom;
+import com.example.ChatApp.Models.ConversationSummary;
 import com.example.ChatApp.Models.DTOs.ConversationDTO;
 import com.example.ChatApp.Models.DTOs.UserDTO;
-import com.example.ChatApp.Models.ChatMessage;
 import com.example.ChatApp.Models.Mappers.UserMapper;
 import com.example.ChatApp.Models.User;
-import com.example.ChatApp.Repositories.ChatMessageRepository;
-import com.example.ChatApp.Repositories.ChatRoomRepository;
+import com.example.ChatApp.Repositories.ConversationSummaryRepository;
 import com.example.ChatApp.Repositories.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -21,8 +20,8 @@ import java.util.stream.Collectors;
 public class UserService {
     private final UserRepository userRepository;
     private final UserMapper userMapper;
-    private final ChatRoomRepository chatRoomRepository;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final UserSearchIndex userSearchIndex;
 
     public List<UserDTO> getAllUsers() {
         List<User> users = userRepository.findAll();
@@ -37,80 +36,65 @@ public class UserService {
 
     /**
      * Search users by username or name (case-insensitive)
-     * Excludes the current user from results
+     * Excludes the current user from results, best matches first
      */
     public List<UserDTO> searchUsers(String query, String currentUserId, int limit) {
         if (query == null || query.trim().isEmpty()) {
             return Collections.emptyList();
         }
 
-        List<User> users = userRepository.searchByUsernameOrName(query.trim());
-        return users.stream()
-                .filter(user -> !user.getId().equals(currentUserId))
-                .limit(limit)
+        // Ranking, exclusion and limit happen in the index, then the matches are loaded by id
+        List<String> userIds = userSearchIndex.search(query, currentUserId, limit);
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, User> users = userRepository.findByIdIn(userIds).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        return userIds.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
                 .map(userMapper::toDTO)
                 .collect(Collectors.toList());
     }
 
     /**
-     * Get all conversations for a user (users they have chatted with before)
-     * Returns conversation info sorted by last message time
+     * Get conversations for a user (users they have chatted with before)
+     * Returns conversation info sorted by last message time, one page at a time
      */
-    public List<ConversationDTO> getConversations(String userId) {
-        // Get all chat rooms involving this user
-        List<ChatRoom> chatRooms = chatRoomRepository.findByFirstUserIdOrSecondUserId(userId, userId);
+    public List<ConversationDTO> getConversations(String userId, int page, int size) {
+        List<ConversationSummary> summaries = conversationSummaryRepository
+                .findByUserIdOrderByLastMessageTimeDesc(userId, PageRequest.of(page, size));
 
-        if (chatRooms.isEmpty()) {
+        if (summaries.isEmpty()) {
             return Collections.emptyList();
         }
 
-        List<ConversationDTO> conversations = new ArrayList<>();
-
-        for (ChatRoom room : chatRooms) {
-            // Determine the other user in the conversation
-            String otherUserId = room.getFirstUserId().equals(userId)
-                    ? room.getSecondUserId()
-                    : room.getFirstUserId();
+        // Load the other participants in one query
+        List<String> otherUserIds = summaries.stream()
+                .map(ConversationSummary::getOtherUserId)
+                .collect(Collectors.toList());
+        Map<String, User> otherUsers = userRepository.findByIdIn(otherUserIds).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
 
-            // Get the other user's info
-            Optional<User> otherUserOpt = userRepository.findById(otherUserId);
-            if (otherUserOpt.isEmpty()) {
+        List<ConversationDTO> conversations = new ArrayList<>();
+        for (ConversationSummary summary : summaries) {
+            User otherUser = otherUsers.get(summary.getOtherUserId());
+            if (otherUser == null) {
                 continue;
             }
-            User otherUser = otherUserOpt.get();
 
-            // Get the last message in this chat room
-            Optional<ChatMessage> lastMessageOpt = chatMessageRepository
-                    .findFirstByChatIdOrderByTimestampDesc(room.getId());
-
-            ConversationDTO.ConversationDTOBuilder builder = ConversationDTO.builder()
+            conversations.add(ConversationDTO.builder()
                     .odUserId(otherUser.getId())
                     .name(otherUser.getName())
                     .username(otherUser.getUsername())
                     .avatarUrl(otherUser.getAvatarUrl())
-                    .unreadCount(0); // Can be enhanced with read receipts later
-
-            if (lastMessageOpt.isPresent()) {
-                ChatMessage lastMessage = lastMessageOpt.get();
-                builder.lastMessage(lastMessage.getContent())
-                        .lastMessageTime(lastMessage.getTimestamp())
-                        .lastMessageSenderId(lastMessage.getSenderId());
-            }
-
-            conversations.add(builder.build());
+                    .lastMessage(summary.getLastMessage())
+                    .lastMessageTime(summary.getLastMessageTime())
+                    .lastMessageSenderId(summary.getLastMessageSenderId())
+                    .unreadCount((int) summary.getUnreadCount())
+                    .build());
         }
 
-        // Sort by last message time (most recent first)
-        conversations.sort((c1, c2) -> {
-            if (c1.getLastMessageTime() == null && c2.getLastMessageTime() == null)
-                return 0;
-            if (c1.getLastMessageTime() == null)
-                return 1;
-            if (c2.getLastMessageTime() == null)
-                return -1;
-            return c2.getLastMessageTime().compareTo(c1.getLastMessageTime());
-        });
-
         return conversations;
     }
 }
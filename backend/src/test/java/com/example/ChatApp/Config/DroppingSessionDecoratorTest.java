@@ -0,0 +1,141 @@
+package com.example.ChatApp.Config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DroppingSessionDecoratorTest {
+
+    private static final int FRAME_SIZE = 200;
+    private static final int BUFFER_LIMIT = 1000;
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private BackpressureWebSocketHandler handler;
+    private DroppingSessionDecorator session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("session-1");
+        when(delegate.isOpen()).thenReturn(true);
+        // The first write blocks like a client that stopped reading
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            writing.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            sent.add(name(message));
+            return null;
+        }).when(delegate).sendMessage(any());
+
+        handler = new BackpressureWebSocketHandler(mock(MessageChannel.class), mock(SubscribableChannel.class),
+                BackpressureWebSocketHandler.OverflowPolicy.DROP_DROPPABLE, List.of("/topic/online", "/topic/status"));
+        session = new DroppingSessionDecorator(delegate, 60_000, BUFFER_LIMIT,
+                List.of("/topic/online", "/topic/status"), handler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    void dropsPresenceAndKeepsChatWhileTheClientIsBehind() throws Exception {
+        CompletableFuture<Void> writer = blockOn(frame("/user/queue/messages", "chat-0"));
+
+        session.sendMessage(frame("/user/queue/messages", "chat-1"));
+        session.sendMessage(frame("/topic/online", "presence-1"));
+        // Buffer is 400 of 1000 bytes: droppable frames only fit in the first half
+        session.sendMessage(frame("/topic/online", "presence-2"));
+        session.sendMessage(frame("/user/queue/messages", "chat-2"));
+        session.sendMessage(frame("/topic/status", "presence-3"));
+        session.sendMessage(frame("/user/queue/messages", "chat-3"));
+        session.sendMessage(frame("/user/queue/messages", "chat-4"));
+        assertThat(session.getBufferSize()).isEqualTo(BUFFER_LIMIT);
+
+        release.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertThat(sent).containsExactly("chat-0", "chat-1", "presence-1", "chat-2", "chat-3", "chat-4");
+        assertThat(handler.stats().getDroppedMessages()).isEqualTo(2);
+        assertThat(handler.stats().getDisconnectedSessions()).isZero();
+    }
+
+    @Test
+    void closesTheSessionWhenChatFramesDoNotFit() throws Exception {
+        CompletableFuture<Void> writer = blockOn(frame("/user/queue/messages", "chat-0"));
+
+        for (int i = 1; i <= BUFFER_LIMIT / FRAME_SIZE; i++) {
+            session.sendMessage(frame("/user/queue/messages", "chat-" + i));
+        }
+        assertThatThrownBy(() -> session.sendMessage(frame("/user/queue/messages", "chat-overflow")))
+                .isInstanceOf(SessionLimitExceededException.class);
+        assertThat(handler.stats().getDisconnectedSessions()).isEqualTo(1);
+
+        // Nothing is accepted once the session is being closed
+        session.sendMessage(frame("/topic/online", "presence-1"));
+        release.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+        assertThat(sent).doesNotContain("chat-overflow", "presence-1");
+    }
+
+    @Test
+    void sendsEverythingWhileTheClientKeepsUp() throws Exception {
+        release.countDown();
+        for (int i = 0; i < 20; i++) {
+            session.sendMessage(frame("/topic/online", "presence-" + i));
+        }
+        assertThat(sent).hasSize(20);
+        assertThat(handler.stats().getDroppedMessages()).isZero();
+    }
+
+    /**
+     * Send from another thread and return once that thread is stuck in the write
+     */
+    private CompletableFuture<Void> blockOn(TextMessage message) throws InterruptedException {
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                session.sendMessage(message);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+        return writer;
+    }
+
+    /**
+     * STOMP MESSAGE frame of exactly FRAME_SIZE bytes, the body carries the name
+     */
+    private static TextMessage frame(String destination, String name) {
+        String head = "MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\n\n" + name + "|";
+        return new TextMessage(head + "x".repeat(FRAME_SIZE - head.length() - 1) + "\0");
+    }
+
+    private static String name(WebSocketMessage<?> message) {
+        String payload = (String) message.getPayload();
+        int body = payload.indexOf("\n\n") + 2;
+        return payload.substring(body, payload.indexOf('|', body));
+    }
+}
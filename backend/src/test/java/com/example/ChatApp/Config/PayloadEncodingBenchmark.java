@@ -0,0 +1,136 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.ConversationDTO;
+import com.example.ChatApp.Models.DTOs.MessagePageDTO;
+import com.example.ChatApp.Models.DTOs.PresenceEvent;
+import com.example.ChatApp.Models.DTOs.ReadReceiptEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encode cost and body size of the STOMP payloads in JSON, CBOR and Smile.
+ * Not a test: run the main method from the IDE, or after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes:<dependency classpath> com.example.ChatApp.Config.PayloadEncodingBenchmark}.
+ * A session on CBOR or Smile costs {@link PayloadEncodingInterceptor} that row on top of the
+ * JSON encode, once per send, shared by all subscribers of that send.
+ */
+public class PayloadEncodingBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        // Same settings as the Spring Boot mapper: ISO dates, not timestamps
+        ObjectMapper json = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ObjectMapper cbor = json.copyWith(new CBORFactory());
+        ObjectMapper smile = json.copyWith(new SmileFactory());
+
+        System.out.printf("%-20s %-10s %10s %12s%n", "payload", "encoding", "bytes", "ns/op");
+        for (Map.Entry<String, Object> sample : samples().entrySet()) {
+            Object value = sample.getValue();
+            report(sample.getKey(), "json", json.writeValueAsBytes(value).length, measure(() -> json.writeValueAsBytes(value)));
+            report(sample.getKey(), "cbor", cbor.writeValueAsBytes(value).length,
+                    measure(() -> cbor.writeValueAsBytes(value)));
+            report(sample.getKey(), "smile", smile.writeValueAsBytes(value).length,
+                    measure(() -> smile.writeValueAsBytes(value)));
+        }
+    }
+
+    private static Map<String, Object> samples() {
+        String alice = new ObjectId().toHexString();
+        String bob = new ObjectId().toHexString();
+        String chatId = alice + "_" + bob;
+
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(message(chatId, i % 2 == 0 ? alice : bob, i % 2 == 0 ? bob : alice,
+                    "Message number " + i + ", see you at the usual place around seven?"));
+        }
+
+        List<ConversationDTO> conversations = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            conversations.add(ConversationDTO.builder()
+                    .odUserId(new ObjectId().toHexString())
+                    .name("User " + i)
+                    .username("user" + i)
+                    .avatarUrl("http://localhost:8080/api/files/avatars/"
+                            + "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.png")
+                    .lastMessage("Sounds good, talk tomorrow")
+                    .lastMessageTime(Instant.now())
+                    .lastMessageSenderId(alice)
+                    .unreadCount(i % 3)
+                    .build());
+        }
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("ChatMessage", messages.get(0));
+        samples.put("PresenceEvent", PresenceEvent.builder()
+                .version(123_456)
+                .userId(alice)
+                .online(true)
+                .lastSeen(Instant.now())
+                .build());
+        samples.put("ReadReceiptEvent", ReadReceiptEvent.builder()
+                .chatId(chatId)
+                .readerId(bob)
+                .messageId(messages.get(49).getId())
+                .readAt(Instant.now())
+                .build());
+        samples.put("MessagePageDTO(50)", MessagePageDTO.builder()
+                .messages(messages)
+                .nextCursor("MTcwMDAwMDAwMDAwMDo2NTZmYjQ")
+                .hasMore(true)
+                .build());
+        samples.put("Conversations(50)", conversations);
+        return samples;
+    }
+
+    private static ChatMessage message(String chatId, String senderId, String receiverId, String content) {
+        return ChatMessage.builder()
+                .id(new ObjectId().toHexString())
+                .chatId(chatId)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .content(content)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    private static double measure(Encoder encoder) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += encoder.encode().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += encoder.encode().length;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) elapsed / ITERATIONS;
+    }
+
+    private static void report(String payload, String encoding, int bytes, double nanos) {
+        System.out.printf("%-20s %-10s %10d %12.1f%n", payload, encoding, bytes, nanos);
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        byte[] encode() throws Exception;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.ChatApp.Config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class RateLimitInterceptorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MessageChannel clientOutboundChannel = mock(MessageChannel.class);
+    private long nanos = 1_000 * SECOND;
+
+    private RateLimitInterceptor interceptor(String... rules) {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(() -> nanos);
+        ReflectionTestUtils.setField(interceptor, "enabled", true);
+        ReflectionTestUtils.setField(interceptor, "ruleSpecs", List.of(rules));
+        ReflectionTestUtils.setField(interceptor, "clientOutboundChannel", clientOutboundChannel);
+        interceptor.init();
+        return interceptor;
+    }
+
+    @Test
+    void burstThenRejectThenRefill() {
+        RateLimitInterceptor interceptor = interceptor("/app/chat:1:2");
+
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat")).isNull();
+        assertThat(interceptor.getRejectedFrames()).isEqualTo(1);
+
+        nanos += SECOND;
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat")).isNull();
+    }
+
+    @Test
+    void otherDestinationsAreNotLimited() {
+        RateLimitInterceptor interceptor = interceptor("/app/chat:1:1");
+
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat.read")).isNotNull();
+        assertThat(send(interceptor, "/app/chat.read")).isNotNull();
+    }
+
+    @Test
+    void tokensOfPassingRulesAreGivenBackWhenALaterRuleRejects() {
+        RateLimitInterceptor interceptor = interceptor("*:1:2", "/app/typing:1:1:drop");
+
+        assertThat(send(interceptor, "/app/typing")).isNotNull();
+        // Passes *, fails the typing rule; the * token is given back
+        assertThat(send(interceptor, "/app/typing")).isNull();
+
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat")).isNull();
+    }
+
+    @Test
+    void matchingDropRuleDropsSilentlyEvenWhenAnotherRuleRejects() {
+        RateLimitInterceptor interceptor = interceptor("*:1:1", "/app/typing:10:10:drop");
+
+        assertThat(send(interceptor, "/app/typing")).isNotNull();
+        // Rejected by *, but typing frames are droppable
+        assertThat(send(interceptor, "/app/typing")).isNull();
+
+        assertThat(interceptor.getDroppedFrames()).isEqualTo(1);
+        assertThat(interceptor.getRejectedFrames()).isZero();
+        verify(clientOutboundChannel, never()).send(argThat(message -> true));
+    }
+
+    @Test
+    void rejectedFrameWithoutDropRuleGetsAnError() {
+        RateLimitInterceptor interceptor = interceptor("*:1:1", "/app/typing:10:10:drop");
+
+        assertThat(send(interceptor, "/app/chat")).isNotNull();
+        assertThat(send(interceptor, "/app/chat")).isNull();
+
+        assertThat(interceptor.getRejectedFrames()).isEqualTo(1);
+        verify(clientOutboundChannel).send(argThat(message ->
+                StompHeaderAccessor.wrap(message).getCommand() == StompCommand.ERROR));
+    }
+
+    @Test
+    void sweepForgetsBucketsOnceRefilled() {
+        RateLimitInterceptor interceptor = interceptor("/app/chat:1:5");
+        send(interceptor, "/app/chat");
+        send(interceptor, "/app/chat");
+
+        interceptor.sweepIdleBuckets();
+        assertThat(buckets(interceptor)).containsKey("alice");
+
+        nanos += 2 * SECOND;
+        interceptor.sweepIdleBuckets();
+        assertThat(buckets(interceptor)).isEmpty();
+    }
+
+    private static Message<?> send(RateLimitInterceptor interceptor, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setSessionId("s1");
+        accessor.setUser(() -> "alice");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return interceptor.preSend(message, mock(MessageChannel.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> buckets(RateLimitInterceptor interceptor) {
+        return (Map<String, ?>) ReflectionTestUtils.getField(interceptor, "buckets");
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.ChatApp.Config;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.PresenceEvent;
+import com.example.ChatApp.Models.Enums.PayloadEncoding;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.bson.types.ObjectId;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+/**
+ * Per-message server CPU and bytes on the wire of the STOMP transports, for a stream of
+ * chat messages and presence events as one client would receive them. Every pipeline
+ * includes the JSON encode and the STOMP frame; on top of that:
+ * <ul>
+ *     <li>sockjs: SockJS {@code a[...]} framing over a WebSocket text frame (/ws)</li>
+ *     <li>native: plain WebSocket frame (/ws-native)</li>
+ *     <li>native+deflate: permessage-deflate with context takeover, as Tomcat does it</li>
+ *     <li>native+cbor+deflate: the same with a CBOR body, see {@link PayloadEncodingInterceptor}</li>
+ * </ul>
+ * Not a test: run the main method, see {@link PayloadEncodingBenchmark} for the classpath.
+ */
+public class WebSocketTransportHarness {
+
+    private static final int MESSAGES = 2_000;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ObjectMapper cbor = json.copyWith(new CBORFactory());
+        StompEncoder stompEncoder = new StompEncoder();
+        Jackson2SockJsMessageCodec sockJsCodec = new Jackson2SockJsMessageCodec(json);
+
+        List<Object> stream = stream();
+
+        List<Transport> transports = List.of(
+                new Transport("sockjs", body -> {
+                    byte[] frame = stompFrame(stompEncoder, body, false);
+                    String sockJs = sockJsCodec.encode(new String(frame, StandardCharsets.UTF_8));
+                    return webSocketFrameLength(sockJs.getBytes(StandardCharsets.UTF_8).length);
+                }, false),
+                new Transport("native", body -> webSocketFrameLength(stompFrame(stompEncoder, body, false).length), false),
+                new Transport("native+deflate", null, false),
+                new Transport("native+cbor+deflate", null, true));
+
+        System.out.printf("%-22s %14s %12s%n", "transport", "bytes/message", "ns/message");
+        for (Transport transport : transports) {
+            long bytes = 0;
+            long elapsed = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                // One compressor per connection, shared by all its messages (context takeover)
+                PerMessageDeflate deflate = new PerMessageDeflate();
+                long roundBytes = 0;
+                long start = System.nanoTime();
+                for (Object event : stream) {
+                    // The JSON body is produced for every send, binary sessions add their own encode
+                    byte[] body = json.writeValueAsBytes(event);
+                    if (transport.cbor()) {
+                        body = cbor.writeValueAsBytes(event);
+                    }
+                    if (transport.encoder() != null) {
+                        roundBytes += transport.encoder().apply(body);
+                    } else {
+                        byte[] frame = stompFrame(stompEncoder, body, transport.cbor());
+                        roundBytes += webSocketFrameLength(deflate.compress(frame).length);
+                    }
+                }
+                long roundElapsed = System.nanoTime() - start;
+                // The first rounds are warm-up
+                if (round >= ROUNDS / 2) {
+                    bytes += roundBytes;
+                    elapsed += roundElapsed;
+                }
+                deflate.close();
+            }
+            long measured = (long) (ROUNDS - ROUNDS / 2) * stream.size();
+            System.out.printf("%-22s %14.1f %12.1f%n", transport.name(),
+                    (double) bytes / measured, (double) elapsed / measured);
+        }
+    }
+
+    private static List<Object> stream() {
+        // Seeded random sentences, so deflate does not get to replay identical messages
+        String[] words = ("hey are you around sure what's up did see the release notes for new version upload flow "
+                + "changed a lot I'll be there in minutes grab table near window if can ok send me file from "
+                + "yesterday's meeting when get chance lunch tomorrow sounds good call later thanks no worries "
+                + "running late traffic again already left home almost done with review please check pull request "
+                + "build is green merged deploy tonight weekend plans movie dinner coffee morning").split(" ");
+        Random random = new Random(42);
+        String alice = new ObjectId().toHexString();
+        String bob = new ObjectId().toHexString();
+        List<Object> stream = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            if (i % 4 == 3) {
+                stream.add(PresenceEvent.builder()
+                        .version(i)
+                        .userId(new ObjectId().toHexString())
+                        .online(i % 8 == 3)
+                        .lastSeen(Instant.now())
+                        .build());
+            } else {
+                boolean fromAlice = i % 2 == 0;
+                stream.add(ChatMessage.builder()
+                        .id(new ObjectId().toHexString())
+                        .chatId(alice + "_" + bob)
+                        .senderId(fromAlice ? alice : bob)
+                        .receiverId(fromAlice ? bob : alice)
+                        .content(sentence(random, words))
+                        .timestamp(Instant.now())
+                        .build());
+            }
+        }
+        return stream;
+    }
+
+    private static String sentence(Random random, String[] words) {
+        StringBuilder sentence = new StringBuilder(words[random.nextInt(words.length)]);
+        for (int i = random.nextInt(15); i > 0; i--) {
+            sentence.append(' ').append(words[random.nextInt(words.length)]);
+        }
+        return sentence.toString();
+    }
+
+    private static byte[] stompFrame(StompEncoder encoder, byte[] body, boolean binary) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId(new ObjectId().toHexString());
+        accessor.setContentType(binary ? MimeTypeUtils.APPLICATION_OCTET_STREAM : MimeTypeUtils.APPLICATION_JSON);
+        if (binary) {
+            accessor.setNativeHeader(PayloadEncodingInterceptor.HEADER, PayloadEncoding.CBOR.token());
+        }
+        accessor.setContentLength(body.length);
+        return encoder.encode(accessor.toMap(), body);
+    }
+
+    /**
+     * Server frames are not masked: 2 header bytes, plus 2 or 8 for longer payloads
+     */
+    private static int webSocketFrameLength(int payloadLength) {
+        int header = payloadLength <= 125 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+        return header + payloadLength;
+    }
+
+    private record Transport(String name, Function<byte[], Integer> encoder, boolean cbor) {
+    }
+
+    /**
+     * RFC 7692 compression: raw deflate, sync flush per message, trailing 00 00 ff ff removed
+     */
+    private static final class PerMessageDeflate {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final byte[] buffer = new byte[64 * 1024];
+
+        byte[] compress(byte[] message) {
+            deflater.setInput(message);
+            int length = 0;
+            byte[] out = new byte[message.length + 64];
+            int count;
+            while ((count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH)) > 0) {
+                if (length + count > out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, length + count));
+                }
+                System.arraycopy(buffer, 0, out, length, count);
+                length += count;
+            }
+            return Arrays.copyOf(out, Math.max(0, length - 4));
+        }
+
+        void close() {
+            deflater.end();
+        }
+    }
+}
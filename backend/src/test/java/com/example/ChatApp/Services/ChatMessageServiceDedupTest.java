@@ -0,0 +1,126 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.ChatMessageRequest;
+import com.example.ChatApp.Repositories.ChatMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageServiceDedupTest {
+
+    private static final String CHAT_ID = "alice_bob";
+
+    private final ChatRoomService chatRoomService = mock(ChatRoomService.class);
+    private final ChatMessageWriter chatMessageWriter = mock(ChatMessageWriter.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final MessageTailCache messageTailCache = mock(MessageTailCache.class);
+    private final ChatSequenceService chatSequenceService = mock(ChatSequenceService.class);
+    private final SendDeduplicator sendDeduplicator = new SendDeduplicator();
+    private final AtomicLong seq = new AtomicLong();
+
+    private ChatMessageService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(sendDeduplicator, "windowMs", 60_000L);
+        ReflectionTestUtils.setField(sendDeduplicator, "maxIds", 1000);
+        when(chatRoomService.getChatRoomId(anyString(), anyString())).thenReturn(CHAT_ID);
+        when(chatMessageWriter.pending(CHAT_ID)).thenReturn(List.of());
+        doAnswer(invocation -> {
+            invocation.<LongConsumer>getArgument(1).accept(seq.incrementAndGet());
+            return null;
+        }).when(chatSequenceService).next(eq(CHAT_ID), any());
+
+        service = new ChatMessageService(mock(ChatMessageRepository.class), chatRoomService, chatMessageWriter,
+                mongoTemplate, new ObjectMapper(), messageTailCache, chatSequenceService, sendDeduplicator);
+    }
+
+    @Test
+    void retryReturnsTheStoredMessage() {
+        ChatMessageService.AddedMessage first = service.addChatMessage(request("c1", "hello"));
+        ChatMessageService.AddedMessage retry = service.addChatMessage(request("c1", "hello"));
+
+        assertThat(first.duplicate()).isFalse();
+        assertThat(first.message().getSeq()).isEqualTo(1L);
+        assertThat(first.message().getTimestamp()).isNotNull();
+        assertThat(retry.duplicate()).isTrue();
+        assertThat(retry.message()).isSameAs(first.message());
+        verify(chatMessageWriter, times(1)).write(any());
+    }
+
+    @Test
+    void missRightAfterStartupIsCheckedInTheDatabase() {
+        ChatMessage stored = ChatMessage.builder().id("stored").chatId(CHAT_ID).senderId("alice")
+                .clientMessageId("c1").seq(7L).build();
+        when(mongoTemplate.findOne(any(Query.class), eq(ChatMessage.class))).thenReturn(stored);
+
+        ChatMessageService.AddedMessage retry = service.addChatMessage(request("c1", "hello"));
+
+        assertThat(retry.duplicate()).isTrue();
+        assertThat(retry.message()).isSameAs(stored);
+        verify(chatMessageWriter, never()).write(any());
+        // The original found in the database is not put in the window
+        assertThat(sendDeduplicator.get("alice", "c1")).isNull();
+    }
+
+    @Test
+    void concurrentRetryWaitsForTheFirstSendToBeStored() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(chatMessageWriter).write(any());
+
+        CompletableFuture<ChatMessageService.AddedMessage> first =
+                CompletableFuture.supplyAsync(() -> service.addChatMessage(request("c1", "hello")));
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ChatMessageService.AddedMessage> retry =
+                CompletableFuture.supplyAsync(() -> service.addChatMessage(request("c1", "hello")));
+
+        // Blocked on the dedup lock, not looking at a half-stored message
+        Thread.sleep(100);
+        assertThat(retry).isNotDone();
+
+        release.countDown();
+        ChatMessageService.AddedMessage stored = first.get(10, TimeUnit.SECONDS);
+        ChatMessageService.AddedMessage duplicate = retry.get(10, TimeUnit.SECONDS);
+        assertThat(stored.duplicate()).isFalse();
+        assertThat(duplicate.duplicate()).isTrue();
+        assertThat(duplicate.message()).isSameAs(stored.message());
+        assertThat(duplicate.message().getSeq()).isEqualTo(1L);
+        verify(chatMessageWriter, times(1)).write(any());
+    }
+
+    private static ChatMessageRequest request(String clientMessageId, String content) {
+        ChatMessageRequest request = new ChatMessageRequest();
+        request.setSenderId("alice");
+        request.setReceiverId("bob");
+        request.setContent(content);
+        request.setClientMessageId(clientMessageId);
+        return request;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import com.example.ChatApp.Models.DTOs.AckRequest;
+import com.example.ChatApp.Models.DTOs.PendingMessagesDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageDeliveryServiceTest {
+
+    private static final String ALICE = "alice";
+    private static final String BOB = "bob";
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final PresenceRegistry presenceRegistry = mock(PresenceRegistry.class);
+    private MessageDeliveryService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new MessageDeliveryService(messagingTemplate, presenceRegistry);
+        ReflectionTestUtils.setField(service, "maxPendingPerUser", 3);
+        ReflectionTestUtils.setField(service, "pendingTtlMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxUsers", 2L);
+        service.init();
+    }
+
+    @Test
+    void ackOfALaterSeqKeepsEarlierMessagesPending() {
+        when(presenceRegistry.isOnline(BOB)).thenReturn(true);
+        ChatMessage tenth = message("m10", 10);
+        ChatMessage eleventh = message("m11", 11);
+        service.deliver(tenth);
+        service.deliver(eleventh);
+
+        // The push of 11 overtook 10, the client only acknowledges what arrived
+        service.acknowledge(BOB, ack("m11"));
+        assertThat(ids(service.pending(BOB))).containsExactly("m10");
+
+        service.acknowledge(BOB, ack("m10"));
+        assertThat(service.pending(BOB).getMessages()).isEmpty();
+    }
+
+    @Test
+    void offlineReceiverGetsPendingMessagesUntilAcknowledged() {
+        when(presenceRegistry.isOnline(BOB)).thenReturn(false);
+        service.deliver(message("m1", 1));
+        service.deliver(message("m2", 2));
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any());
+
+        // Reading the pending batch does not remove it, a lost batch is sent again
+        assertThat(ids(service.pending(BOB))).containsExactly("m1", "m2");
+        assertThat(ids(service.pending(BOB))).containsExactly("m1", "m2");
+
+        service.acknowledge(BOB, ack("m1", "m2", "unknown"));
+        assertThat(service.pending(BOB).getMessages()).isEmpty();
+        assertThat(service.pending(ALICE).getMessages()).isEmpty();
+    }
+
+    @Test
+    void onlineReceiverGetsThePush() {
+        when(presenceRegistry.isOnline(BOB)).thenReturn(true);
+        ChatMessage first = message("m1", 1);
+        service.deliver(first);
+        verify(messagingTemplate).convertAndSendToUser(eq(BOB), eq("/queue/messages"), eq(first));
+        assertThat(ids(service.pending(BOB))).containsExactly("m1");
+    }
+
+    @Test
+    void overflowDropsTheOldestAndIsReportedUntilTheQueueDrains() {
+        for (int seq = 1; seq <= 5; seq++) {
+            service.deliver(message("m" + seq, seq));
+        }
+        PendingMessagesDTO pending = service.pending(BOB);
+        assertThat(ids(pending)).containsExactly("m3", "m4", "m5");
+        assertThat(pending.isOverflowed()).isTrue();
+
+        service.acknowledge(BOB, ack("m3", "m4"));
+        assertThat(service.pending(BOB).isOverflowed()).isTrue();
+
+        service.acknowledge(BOB, ack("m5"));
+        service.deliver(message("m6", 6));
+        assertThat(service.pending(BOB).isOverflowed()).isFalse();
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedAcks() {
+        assertThatThrownBy(() -> service.acknowledge(BOB, ack()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.acknowledge(BOB, ack("a", "b", "c", "d")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void tracksAtMostMaxUsersReceivers() {
+        for (int user = 1; user <= 5; user++) {
+            ChatMessage chatMessage = message("m" + user, user);
+            chatMessage.setReceiverId("user" + user);
+            service.deliver(chatMessage);
+        }
+        long tracked = IntStream.rangeClosed(1, 5)
+                .filter(user -> !service.pending("user" + user).getMessages().isEmpty())
+                .count();
+        assertThat(tracked).isLessThanOrEqualTo(2);
+    }
+
+    private static ChatMessage message(String id, long seq) {
+        return ChatMessage.builder()
+                .id(id)
+                .chatId(ChatRoomService.chatRoomIdFor(ALICE, BOB))
+                .senderId(ALICE)
+                .receiverId(BOB)
+                .content("message " + seq)
+                .seq(seq)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    private static AckRequest ack(String... messageIds) {
+        AckRequest request = new AckRequest();
+        request.setMessageIds(List.of(messageIds));
+        return request;
+    }
+
+    private static List<String> ids(PendingMessagesDTO pending) {
+        return pending.getMessages().stream().map(ChatMessage::getId).toList();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.ChatApp.Services;
+
+import com.example.ChatApp.Models.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendDeduplicatorTest {
+
+    private static final long WINDOW_MS = 60_000;
+
+    private final MutableClock clock = new MutableClock();
+    private SendDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new SendDeduplicator(clock);
+        ReflectionTestUtils.setField(deduplicator, "windowMs", WINDOW_MS);
+        ReflectionTestUtils.setField(deduplicator, "maxIds", 3);
+    }
+
+    @Test
+    void missesAreInconclusiveForOneWindowAfterStartup() {
+        assertThat(deduplicator.isExact()).isFalse();
+        clock.advance(WINDOW_MS);
+        assertThat(deduplicator.isExact()).isTrue();
+    }
+
+    @Test
+    void rememberedForAtLeastOneWindow() {
+        ChatMessage stored = message("m1");
+        deduplicator.put("alice", "c1", stored);
+
+        // Rotated into the previous generation, still found
+        clock.advance(WINDOW_MS);
+        assertThat(deduplicator.get("alice", "c1")).isSameAs(stored);
+
+        // Rotated out
+        clock.advance(WINDOW_MS);
+        assertThat(deduplicator.get("alice", "c1")).isNull();
+    }
+
+    @Test
+    void keysAreScopedBySender() {
+        deduplicator.put("alice", "c1", message("m1"));
+        assertThat(deduplicator.get("bob", "c1")).isNull();
+    }
+
+    @Test
+    void sizeLimitRotatesEarlyAndMakesMissesInconclusive() {
+        clock.advance(WINDOW_MS);
+        assertThat(deduplicator.isExact()).isTrue();
+
+        for (int i = 1; i <= 3; i++) {
+            deduplicator.put("alice", "c" + i, message("m" + i));
+        }
+        // The full generation becomes the previous one
+        deduplicator.put("alice", "c4", message("m4"));
+        assertThat(deduplicator.isExact()).isFalse();
+        assertThat(deduplicator.get("alice", "c1")).isNotNull();
+        assertThat(deduplicator.get("alice", "c4")).isNotNull();
+
+        clock.advance(WINDOW_MS);
+        assertThat(deduplicator.isExact()).isTrue();
+    }
+
+    @Test
+    void sameKeySharesALock() {
+        assertThat(deduplicator.lockFor("alice", "c1")).isSameAs(deduplicator.lockFor("alice", "c1"));
+    }
+
+    private static ChatMessage message(String id) {
+        return ChatMessage.builder().id(id).seq(1L).timestamp(Instant.now()).build();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(long millis) {
+            now = now.plus(Duration.ofMillis(millis));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}